@@ -13,6 +13,8 @@ import id.nusawedit.inventory.VirtualInventoryManager;
 import id.nusawedit.selection.SelectionManager;
 import id.nusawedit.operations.BlockOperationHandler;
 import id.nusawedit.visualization.VisualizationManager;
+import id.nusawedit.listeners.InventoryListener;
+import id.nusawedit.listeners.PlayerListener;
 import id.nusawedit.listeners.WandListener;
 import id.nusawedit.handlers.SuperiorSkyblockHandler;
 import id.nusawedit.handlers.GriefPreventionHandler;
@@ -116,6 +118,8 @@ public class Plugin extends JavaPlugin {
         
         // Register event listeners
         getServer().getPluginManager().registerEvents(new WandListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        getServer().getPluginManager().registerEvents(new InventoryListener(this), this);
         
         // Start inventory cleanup task
         inventoryManager.startCleanupTask();
@@ -130,6 +134,11 @@ public class Plugin extends JavaPlugin {
             inventoryManager.saveAllInventories();
         }
         
+        // Flush undo history
+        if (blockOperationHandler != null) {
+            blockOperationHandler.shutdown();
+        }
+        
         // Clean up visualization
         if (visualizationManager != null) {
             visualizationManager.shutdown();
@@ -226,6 +235,10 @@ public class Plugin extends JavaPlugin {
         townyHandler = new TownyHandler(this);
         plotSquaredHandler = new PlotSquaredHandler(this);
         
+        if (blockOperationHandler != null) {
+            blockOperationHandler.reload();
+        }
+        
         // Restart tasks
         if (inventoryManager != null) {
             inventoryManager.stopTasks();
@@ -23,9 +23,12 @@ public class CommandHandler implements CommandExecutor {
         registerSubcommand("set", new SetCommand(plugin));
         registerSubcommand("replace", new ReplaceCommand(plugin));
         registerSubcommand("undo", new UndoCommand(plugin));
+        registerSubcommand("shape", new ShapeCommand(plugin));
         registerSubcommand("reload", new ReloadCommand(plugin));
         registerSubcommand("give", new GiveCommand(plugin));
         registerSubcommand("giveall", new GiveAllCommand(plugin)); // New command
+        registerSubcommand("rollback", new RollbackCommand(plugin));
+        registerSubcommand("storage", new StorageCommand(plugin));
         
         // Visualization commands
         registerSubcommand("visualize", new VisualizeCommand(plugin));
@@ -22,14 +22,20 @@ import org.bukkit.entity.Player;
 public class TabCompleterHandler implements TabCompleter {
     private final Plugin plugin;
     private final List<String> SUBCOMMANDS = Arrays.asList(
-            "inventory", "set", "replace", "undo", "reload", "give", "giveall",
-            "visualize", "preview", "cancel");
+            "inventory", "set", "replace", "undo", "shape", "reload", "give", "giveall", "rollback",
+            "storage", "visualize", "preview", "cancel");
     
-    private final List<String> ADMIN_COMMANDS = Arrays.asList("reload", "give", "giveall");
+    private final List<String> ADMIN_COMMANDS = Arrays.asList("reload", "give", "giveall", "rollback", "storage");
     private final List<String> PLAYER_COMMANDS = Arrays.asList(
-            "inventory", "set", "replace", "undo", "visualize", "preview", "cancel");
+            "inventory", "set", "replace", "undo", "shape", "visualize", "preview", "cancel");
     
     private final List<String> PREVIEW_ACTIONS = Arrays.asList("set", "replace", "cancel", "confirm");
+    private final List<String> PREVIEW_MODES = Arrays.asList("particles", "ghost");
+    private final List<String> OUTLINE_MODES = Arrays.asList("particles", "display");
+    private final List<String> STORAGE_ACTIONS = Arrays.asList("export", "migrate");
+    private final List<String> STORAGE_TYPES = Arrays.asList("file", "sqlite");
+    
+    private final List<String> SHAPES = Arrays.asList("cuboid", "sphere", "cylinder", "polygon", "union");
     
     public TabCompleterHandler(Plugin plugin) {
         this.plugin = plugin;
@@ -70,6 +76,20 @@ public class TabCompleterHandler implements TabCompleter {
                     }
                     break;
                     
+                case "shape":
+                    if (args.length == 2 && sender.hasPermission("nusawedit.shape")) {
+                        // Suggest selection shapes
+                        return suggestByStart(SHAPES, args[1]);
+                    }
+                    break;
+                    
+                case "visualize":
+                    if (args.length == 2 && sender.hasPermission("nusawedit.visualize")) {
+                        // Suggest outline modes
+                        return suggestByStart(OUTLINE_MODES, args[1]);
+                    }
+                    break;
+                    
                 case "give":
                     if (sender.hasPermission("nusawedit.admin.give")) {
                         if (args.length == 2) {
@@ -97,6 +117,30 @@ public class TabCompleterHandler implements TabCompleter {
                     }
                     break;
                     
+                case "rollback":
+                    if (sender.hasPermission("nusawedit.admin.rollback")) {
+                        if (args.length == 2) {
+                            // Suggest area: selection or common radii
+                            return suggestByStart(Arrays.asList("selection", "10", "25", "50"), args[1]);
+                        } else if (args.length == 3) {
+                            // Suggest common time windows
+                            return suggestByStart(Arrays.asList("30m", "1h", "6h", "1d"), args[2]);
+                        }
+                    }
+                    break;
+                    
+                case "storage":
+                    if (sender.hasPermission("nusawedit.admin.storage")) {
+                        if (args.length == 2) {
+                            // Suggest storage actions
+                            return suggestByStart(STORAGE_ACTIONS, args[1]);
+                        } else if (args.length == 3 && args[1].equalsIgnoreCase("migrate")) {
+                            // Suggest the store to copy from
+                            return suggestByStart(STORAGE_TYPES, args[2]);
+                        }
+                    }
+                    break;
+                    
                 case "preview":
                     if (sender.hasPermission("nusawedit.preview")) {
                         if (args.length == 2) {
@@ -110,6 +154,10 @@ public class TabCompleterHandler implements TabCompleter {
                         } else if (args.length == 4 && args[1].equalsIgnoreCase("replace")) {
                             // Suggest target material for replace
                             return suggestMaterials(args[3], false);
+                        } else if ((args.length == 4 && args[1].equalsIgnoreCase("set"))
+                                || (args.length == 5 && args[1].equalsIgnoreCase("replace"))) {
+                            // Suggest preview modes
+                            return suggestByStart(PREVIEW_MODES, args[args.length - 1]);
                         }
                     }
                     break;
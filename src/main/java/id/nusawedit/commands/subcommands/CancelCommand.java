@@ -23,6 +23,12 @@ public class CancelCommand implements SubCommand {
             return false;
         }
         
+        // Rollbacks trim undo history when they finish and always run to the end
+        if (plugin.getBlockOperationHandler().isRollingBack(player)) {
+            player.sendMessage(plugin.getMessageManager().getMessage("rollback.in-progress"));
+            return false;
+        }
+        
         boolean cancelled = plugin.getBlockOperationHandler().cancelOperations(player);
         
         if (cancelled) {
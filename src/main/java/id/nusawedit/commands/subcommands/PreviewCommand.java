@@ -3,6 +3,7 @@ package id.nusawedit.commands.subcommands;
 import id.nusawedit.Plugin;
 import id.nusawedit.commands.SubCommand;
 import id.nusawedit.visualization.BlockPreview;
+import id.nusawedit.visualization.PreviewMode;
 
 import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
@@ -32,10 +33,12 @@ public class PreviewCommand implements SubCommand {
                 player.sendMessage("§aActive preview: §6" + operationType + materialName);
                 player.sendMessage("§aAffected blocks: §6" + preview.getBlockCount());
                 player.sendMessage("§aUse §6/nwe preview confirm §ato execute or §6/nwe preview cancel §ato cancel.");
+            } else if (plugin.getVisualizationManager().isComputingPreview(player)) {
+                player.sendMessage("§7Computing preview...");
             } else {
                 player.sendMessage("§cUsage: /nwe preview <set/replace/cancel/confirm>");
                 player.sendMessage("§cExample: /nwe preview set STONE");
-                player.sendMessage("§cExample: /nwe preview replace DIRT STONE");
+                player.sendMessage("§cExample: /nwe preview replace DIRT STONE ghost");
             }
             return true;
         }
@@ -70,7 +73,9 @@ public class PreviewCommand implements SubCommand {
                     return false;
                 }
                 
-                if (plugin.getVisualizationManager().confirmPreview(player)) {
+                if (plugin.getVisualizationManager().isComputingPreview(player)) {
+                    player.sendMessage("§ePreview is still being computed, please wait.");
+                } else if (plugin.getVisualizationManager().confirmPreview(player)) {
                     player.sendMessage("§aOperation executed!");
                 } else {
                     player.sendMessage("§cFailed to execute operation. No active preview or insufficient materials.");
@@ -86,7 +91,12 @@ public class PreviewCommand implements SubCommand {
     
     private boolean handleSetPreview(Player player, String[] args) {
         if (args.length < 2) {
-            player.sendMessage("§cUsage: /nwe preview set <material>");
+            player.sendMessage("§cUsage: /nwe preview set <material> [particles/ghost]");
+            return false;
+        }
+        
+        PreviewMode mode = parseMode(player, args, 2);
+        if (mode == null) {
             return false;
         }
         
@@ -100,9 +110,8 @@ public class PreviewCommand implements SubCommand {
             return false;
         }
         
-        // Start preview
-        if (plugin.getVisualizationManager().startPreview(player, material, false, null)) {
-            BlockPreview preview = plugin.getVisualizationManager().getPreview(player);
+        // Start preview, the affected blocks are reported once computed
+        if (plugin.getVisualizationManager().startPreview(player, material, false, null, mode, preview -> {
             player.sendMessage("§aPreview started: §6Set " + preview.getBlockCount() + " blocks to " + formatMaterial(material));
             player.sendMessage("§aUse §6/nwe preview confirm §ato execute or §6/nwe preview cancel §ato cancel.");
             
@@ -111,7 +120,8 @@ public class PreviewCommand implements SubCommand {
                 player.sendMessage("§c§lWarning: §eYou don't have enough materials! You need §6" + 
                     preview.getBlockCount() + " " + formatMaterial(material) + "§e!");
             }
-            
+        })) {
+            player.sendMessage("§7Computing preview...");
             return true;
         } else {
             player.sendMessage("§cCouldn't create preview. Do you have a valid selection?");
@@ -121,7 +131,12 @@ public class PreviewCommand implements SubCommand {
     
     private boolean handleReplacePreview(Player player, String[] args) {
         if (args.length < 3) {
-            player.sendMessage("§cUsage: /nwe preview replace <from_material> <to_material>");
+            player.sendMessage("§cUsage: /nwe preview replace <from_material> <to_material> [particles/ghost]");
+            return false;
+        }
+        
+        PreviewMode mode = parseMode(player, args, 3);
+        if (mode == null) {
             return false;
         }
         
@@ -143,9 +158,8 @@ public class PreviewCommand implements SubCommand {
             return false;
         }
         
-        // Start preview
-        if (plugin.getVisualizationManager().startPreview(player, toMaterial, true, fromMaterial)) {
-            BlockPreview preview = plugin.getVisualizationManager().getPreview(player);
+        // Start preview, the affected blocks are reported once computed
+        if (plugin.getVisualizationManager().startPreview(player, toMaterial, true, fromMaterial, mode, preview -> {
             player.sendMessage("§aPreview started: §6Replace " + preview.getBlockCount() + " " + 
                 formatMaterial(fromMaterial) + " blocks with " + formatMaterial(toMaterial));
             player.sendMessage("§aUse §6/nwe preview confirm §ato execute or §6/nwe preview cancel §ato cancel.");
@@ -155,7 +169,8 @@ public class PreviewCommand implements SubCommand {
                 player.sendMessage("§c§lWarning: §eYou don't have enough materials! You need §6" + 
                     preview.getBlockCount() + " " + formatMaterial(toMaterial) + "§e!");
             }
-            
+        })) {
+            player.sendMessage("§7Computing preview...");
             return true;
         } else {
             player.sendMessage("§cCouldn't create preview. Do you have a valid selection?");
@@ -163,6 +178,25 @@ public class PreviewCommand implements SubCommand {
         }
     }
     
+    /**
+     * Read the optional preview mode argument
+     * @param player Player
+     * @param args Command arguments
+     * @param index Position of the mode argument
+     * @return Preview mode, or null if the argument is invalid
+     */
+    private PreviewMode parseMode(Player player, String[] args, int index) {
+        if (args.length <= index) {
+            return plugin.getVisualizationManager().getDefaultPreviewMode();
+        }
+        
+        PreviewMode mode = PreviewMode.fromName(args[index]);
+        if (mode == null) {
+            player.sendMessage("§cInvalid preview mode: " + args[index] + " §c(use particles or ghost)");
+        }
+        return mode;
+    }
+    
     /**
      * Format material name for display
      * @param material Material
@@ -7,7 +7,6 @@ import id.nusawedit.selection.Selection;
 import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.block.Block;
 
 public class ReplaceCommand implements SubCommand {
     private final Plugin plugin;
@@ -81,17 +80,7 @@ public class ReplaceCommand implements SubCommand {
         Selection selection = plugin.getSelectionManager().getSelection(player);
         
         // Hitung jumlah blok yang akan diganti
-        int toReplace = 0;
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    if (block.getType() == fromMaterial && !plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        toReplace++;
-                    }
-                }
-            }
-        }
+        int toReplace = plugin.getBlockOperationHandler().countBlocks(selection, fromMaterial);
         
         // Check batas blok sesuai rank
         String rank = plugin.getBlockOperationHandler().getRank(player);
@@ -0,0 +1,120 @@
+package id.nusawedit.commands.subcommands;
+
+import id.nusawedit.Plugin;
+import id.nusawedit.commands.SubCommand;
+import id.nusawedit.selection.CuboidRegion;
+import id.nusawedit.selection.Region;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+public class RollbackCommand implements SubCommand {
+    private final Plugin plugin;
+    
+    public RollbackCommand(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean execute(CommandSender sender, String[] args) {
+        Player player = (Player) sender;
+        
+        if (args.length < 2) {
+            player.sendMessage(plugin.getMessageManager().getMessage("rollback.usage"));
+            player.sendMessage(plugin.getMessageManager().getMessage("rollback.usage-example"));
+            return false;
+        }
+        
+        long duration = parseDuration(args[1]);
+        if (duration <= 0) {
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage("rollback.invalid-time", args[1]));
+            return false;
+        }
+        long since = System.currentTimeMillis() - duration;
+        
+        Region region;
+        
+        if (args[0].equalsIgnoreCase("selection")) {
+            // Roll back the admin's own selection, in whatever shape it has
+            if (!plugin.getSelectionManager().hasCompleteSelection(player)) {
+                player.sendMessage(plugin.getMessageManager().getMessage("operations.no-selection"));
+                return false;
+            }
+            
+            region = plugin.getSelectionManager().getSelection(player).getRegion();
+        } else {
+            // Roll back a full-height square around the admin
+            int radius;
+            try {
+                radius = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                radius = -1;
+            }
+            
+            if (radius <= 0) {
+                player.sendMessage(plugin.getMessageManager().getFormattedMessage("rollback.invalid-radius", args[0]));
+                return false;
+            }
+            
+            Location center = player.getLocation();
+            World world = center.getWorld();
+            region = new CuboidRegion(world,
+                    center.getBlockX() - radius, world.getMinHeight(), center.getBlockZ() - radius,
+                    center.getBlockX() + radius, world.getMaxHeight() - 1, center.getBlockZ() + radius);
+        }
+        
+        int count = plugin.getBlockOperationHandler().rollbackArea(player, region, since);
+        if (count == 0) {
+            player.sendMessage(plugin.getMessageManager().getMessage("rollback.none-found"));
+        }
+        return count > 0;
+    }
+    
+    /**
+     * Parse a duration such as 30s, 15m, 2h or 1d
+     * @param input Duration string
+     * @return Duration in milliseconds, or -1 if invalid
+     */
+    private long parseDuration(String input) {
+        if (input.length() < 2) {
+            return -1;
+        }
+        
+        long amount;
+        try {
+            amount = Long.parseLong(input.substring(0, input.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        
+        switch (Character.toLowerCase(input.charAt(input.length() - 1))) {
+            case 's':
+                return amount * 1000;
+            case 'm':
+                return amount * 60 * 1000;
+            case 'h':
+                return amount * 60 * 60 * 1000;
+            case 'd':
+                return amount * 24 * 60 * 60 * 1000;
+            default:
+                return -1;
+        }
+    }
+    
+    @Override
+    public boolean hasPermission(CommandSender sender) {
+        return sender.hasPermission("nusawedit.admin.rollback");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Roll back NusaWEdit edits in an area";
+    }
+    
+    @Override
+    public boolean isPlayerOnly() {
+        return true;
+    }
+}
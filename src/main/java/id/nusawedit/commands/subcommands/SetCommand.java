@@ -125,7 +125,7 @@ public class SetCommand implements SubCommand {
         }
         
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection.getVolume();
+        long volume = selection.getVolume();
         
         // Check batas blok sesuai rank
         String rank = plugin.getBlockOperationHandler().getRank(player);
@@ -137,7 +137,7 @@ public class SetCommand implements SubCommand {
         }
         
         // Calculate material requirements
-        Map<Material, Integer> requirements = pattern.calculateRequirements(volume);
+        Map<Material, Integer> requirements = pattern.calculateRequirements((int) volume);
         
         // Check if player has enough of each material
         for (Map.Entry<Material, Integer> entry : requirements.entrySet()) {
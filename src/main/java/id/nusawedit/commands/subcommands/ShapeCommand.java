@@ -0,0 +1,50 @@
+package id.nusawedit.commands.subcommands;
+
+import id.nusawedit.Plugin;
+import id.nusawedit.commands.SubCommand;
+import id.nusawedit.selection.RegionShape;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+public class ShapeCommand implements SubCommand {
+    private final Plugin plugin;
+    
+    public ShapeCommand(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean execute(CommandSender sender, String[] args) {
+        Player player = (Player) sender;
+        
+        if (args.length < 1) {
+            player.sendMessage(plugin.getMessageManager().getMessage("selection.shape-usage"));
+            return false;
+        }
+        
+        RegionShape shape = RegionShape.fromName(args[0]);
+        if (shape == null) {
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.invalid-shape", args[0]));
+            return false;
+        }
+        
+        plugin.getSelectionManager().setShape(player, shape);
+        return true;
+    }
+    
+    @Override
+    public boolean hasPermission(CommandSender sender) {
+        return sender.hasPermission("nusawedit.shape");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Change the shape of your selection";
+    }
+    
+    @Override
+    public boolean isPlayerOnly() {
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package id.nusawedit.commands.subcommands;
+
+import id.nusawedit.Plugin;
+import id.nusawedit.commands.SubCommand;
+
+import java.io.File;
+
+import org.bukkit.command.CommandSender;
+
+public class StorageCommand implements SubCommand {
+    private final Plugin plugin;
+    
+    public StorageCommand(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean execute(CommandSender sender, String[] args) {
+        if (args.length >= 2 && args[0].equalsIgnoreCase("migrate")
+                && (args[1].equalsIgnoreCase("file") || args[1].equalsIgnoreCase("sqlite"))) {
+            boolean started = plugin.getInventoryManager().migrateFrom(args[1], count ->
+                    sender.sendMessage(plugin.getMessageManager().getFormattedMessage("storage.migrate-complete", count)));
+            if (!started) {
+                sender.sendMessage(plugin.getMessageManager().getFormattedMessage("storage.migrate-same-store", args[1]));
+                return false;
+            }
+            sender.sendMessage(plugin.getMessageManager().getFormattedMessage("storage.migrate-started", args[1]));
+            return true;
+        }
+        
+        if (args.length < 1 || !args[0].equalsIgnoreCase("export")) {
+            sender.sendMessage(plugin.getMessageManager().getMessage("storage.usage"));
+            return false;
+        }
+        
+        File folder = plugin.getInventoryManager().exportToYaml(count ->
+                sender.sendMessage(plugin.getMessageManager().getFormattedMessage("storage.export-complete", count)));
+        sender.sendMessage(plugin.getMessageManager().getFormattedMessage("storage.export-started", folder.getPath()));
+        return true;
+    }
+    
+    @Override
+    public boolean hasPermission(CommandSender sender) {
+        return sender.hasPermission("nusawedit.admin.storage");
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Manage virtual inventory storage";
+    }
+    
+    @Override
+    public boolean isPlayerOnly() {
+        return false;
+    }
+}
@@ -2,6 +2,7 @@ package id.nusawedit.commands.subcommands;
 
 import id.nusawedit.Plugin;
 import id.nusawedit.commands.SubCommand;
+import id.nusawedit.visualization.OutlineMode;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -23,6 +24,19 @@ public class VisualizeCommand implements SubCommand {
             return false;
         }
         
+        // An explicit outline mode always enables visualization
+        if (args.length > 0) {
+            OutlineMode mode = OutlineMode.fromName(args[0]);
+            if (mode == null) {
+                player.sendMessage(plugin.getMessageManager().getFormattedMessage("visualize.invalid-mode", args[0]));
+                return false;
+            }
+            plugin.getVisualizationManager().setOutlineMode(player, mode);
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+                "visualize.mode-set", mode.name().toLowerCase()));
+            return true;
+        }
+        
         boolean enabled = plugin.getVisualizationManager().toggleVisualization(player);
         
         if (enabled) {
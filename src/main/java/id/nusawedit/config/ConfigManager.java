@@ -138,6 +138,30 @@ public class ConfigManager {
         return config.getInt("inventory-warning-minutes", 30);
     }
     
+    /**
+     * Get the delay before changed inventories are saved in the background
+     * @return Delay in seconds (default 30)
+     */
+    public int getInventorySaveDelaySeconds() {
+        return config.getInt("inventory-save-delay-seconds", 30);
+    }
+    
+    /**
+     * Get where virtual inventories are stored
+     * @return "file" or "sqlite" (default file)
+     */
+    public String getStorageType() {
+        return config.getString("storage.type", "file");
+    }
+    
+    /**
+     * Get the number of database connections kept open
+     * @return Pool size (default 3)
+     */
+    public int getStoragePoolSize() {
+        return config.getInt("storage.pool-size", 3);
+    }
+    
     /**
      * Get the batch size for async operations
      * @return Batch size
@@ -162,6 +186,86 @@ public class ConfigManager {
         return config.getInt("async.progress-report-interval", 10); // Default to 10%
     }
 
+    /**
+     * Get how long completed operations can be rolled back
+     * @return Retention in hours (default 24)
+     */
+    public int getRollbackRetentionHours() {
+        return config.getInt("rollback.retention-hours", 24);
+    }
+    
+    /**
+     * Get how many blocks of recent operations are kept in memory for rollbacks
+     * @return Maximum number of blocks (default 1000000)
+     */
+    public long getRollbackMaxIndexedBlocks() {
+        return config.getLong("rollback.max-indexed-blocks", 1000000);
+    }
+
+    /**
+     * Get the distance beyond which visualization particles are not sent
+     * @return Distance in blocks (default 64)
+     */
+    public int getVisualizationMaxDistance() {
+        return config.getInt("visualization.max-distance", 64);
+    }
+
+    /**
+     * Get the width of the view cone in which visualization particles are sent
+     * @return Angle in degrees, 360 to disable (default 140)
+     */
+    public int getVisualizationViewAngle() {
+        return config.getInt("visualization.view-angle", 140);
+    }
+
+    /**
+     * Get the distance up to which visualization particles are shown at full density
+     * @return Distance in blocks (default 16)
+     */
+    public int getVisualizationFullDetailDistance() {
+        return config.getInt("visualization.full-detail-distance", 16);
+    }
+
+    /**
+     * Get the maximum number of visualization particles sent to a player per second
+     * @return Particles per second (default 600)
+     */
+    public int getVisualizationMaxParticlesPerSecond() {
+        return config.getInt("visualization.max-particles-per-second", 600);
+    }
+
+    /**
+     * Get how previews are shown when the command does not say
+     * @return Preview mode name, "particles" or "ghost" (default particles)
+     */
+    public String getPreviewMode() {
+        return config.getString("visualization.preview-mode", "particles");
+    }
+
+    /**
+     * Get how selection outlines are drawn when the player does not choose
+     * @return Outline mode name, "particles" or "display" (default particles)
+     */
+    public String getOutlineMode() {
+        return config.getString("visualization.outline-mode", "particles");
+    }
+
+    /**
+     * Get how long an unconfirmed preview is kept
+     * @return Preview time to live in minutes (default 10)
+     */
+    public int getPreviewTtlMinutes() {
+        return config.getInt("visualization.preview-ttl-minutes", 10);
+    }
+
+    /**
+     * Get the memory all active previews together may use before the oldest are evicted
+     * @return Preview memory budget in megabytes (default 64)
+     */
+    public int getPreviewMemoryBudgetMb() {
+        return config.getInt("visualization.preview-memory-mb", 64);
+    }
+
     /**
      * Get block limit multiplier for a specific world
      * @param worldName Name of the world
@@ -0,0 +1,78 @@
+package id.nusawedit.inventory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Players ordered by a due time, so checking for due entries only touches those.
+ *
+ * Each player has at most one entry; scheduling again moves it. Only used on the main thread.
+ */
+class ExpiryQueue {
+    private final TreeSet<Entry> queue = new TreeSet<>(
+            Comparator.comparingLong((Entry entry) -> entry.time).thenComparing(entry -> entry.playerId));
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    
+    /**
+     * Schedule a player, replacing their previous entry
+     * @param playerId Player UUID
+     * @param time Due time in milliseconds
+     */
+    void schedule(UUID playerId, long time) {
+        Entry entry = new Entry(playerId, time);
+        Entry previous = entries.put(playerId, entry);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(entry);
+    }
+    
+    /**
+     * Remove a player's entry
+     * @param playerId Player UUID
+     */
+    void remove(UUID playerId) {
+        Entry previous = entries.remove(playerId);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+    }
+    
+    /**
+     * Remove and return the players that are due
+     * @param now Current time in milliseconds
+     * @return Due players, earliest first
+     */
+    List<UUID> pollDue(long now) {
+        List<UUID> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.first().time <= now) {
+            Entry entry = queue.pollFirst();
+            entries.remove(entry.playerId);
+            due.add(entry.playerId);
+        }
+        return due;
+    }
+    
+    /**
+     * Remove every entry
+     */
+    void clear() {
+        queue.clear();
+        entries.clear();
+    }
+    
+    private static class Entry {
+        final UUID playerId;
+        final long time;
+        
+        Entry(UUID playerId, long time) {
+            this.playerId = playerId;
+            this.time = time;
+        }
+    }
+}
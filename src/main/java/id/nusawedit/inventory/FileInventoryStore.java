@@ -0,0 +1,193 @@
+package id.nusawedit.inventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Keeps each virtual inventory in its own binary file, with a separate expiry index.
+ *
+ * The index is written before the inventory files, so a file on disk always has an
+ * index entry and players without an entry have no stored inventory.
+ */
+class FileInventoryStore implements InventoryStore {
+    private final File dataFolder;
+    private final Logger logger;
+    
+    /**
+     * Create a file store
+     * @param dataFolder Inventory folder
+     * @param logger Logger for files that cannot be read or written
+     */
+    FileInventoryStore(File dataFolder, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+    }
+    
+    /**
+     * Load the expiry index, building it from the inventory files if it is missing,
+     * and convert YAML files left by older versions
+     */
+    @Override
+    public Map<UUID, Long> open() throws IOException {
+        Map<UUID, Long> expiryTimes = new HashMap<>();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+            return expiryTimes;
+        }
+        
+        File indexFile = new File(dataFolder, InventoryStorage.INDEX_FILE);
+        boolean rebuilt = false;
+        if (indexFile.exists()) {
+            try {
+                expiryTimes.putAll(InventoryStorage.readIndex(indexFile));
+            } catch (IOException e) {
+                logger.warning("Failed to load the inventory index, rebuilding it");
+                e.printStackTrace();
+                rebuildIndex(expiryTimes);
+                rebuilt = true;
+            }
+        } else {
+            rebuildIndex(expiryTimes);
+            rebuilt = true;
+        }
+        
+        boolean migrated = migrateYamlInventories(expiryTimes);
+        if (rebuilt || migrated) {
+            InventoryStorage.writeIndex(indexFile, expiryTimes);
+        }
+        return expiryTimes;
+    }
+    
+    /**
+     * Build the expiry index by reading every inventory file once
+     * @param expiryTimes Index to fill
+     */
+    private void rebuildIndex(Map<UUID, Long> expiryTimes) {
+        File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(InventoryStorage.BINARY_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        
+        for (File file : files) {
+            try {
+                InventorySnapshot stored = InventoryStorage.readBinary(file, parsePlayerId(file));
+                expiryTimes.put(stored.getPlayerId(), stored.getExpiryTime());
+            } catch (Exception e) {
+                logger.warning("Failed to index inventory: " + file.getName());
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Convert YAML inventory files to the binary format, the originals are moved to a backup folder
+     * @param expiryTimes Index to add the converted inventories to
+     * @return true if any inventory was converted
+     */
+    private boolean migrateYamlInventories(Map<UUID, Long> expiryTimes) {
+        File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(InventoryStorage.YAML_EXTENSION));
+        if (files == null || files.length == 0) {
+            return false;
+        }
+        
+        File backupFolder = new File(dataFolder, "yaml-backup");
+        backupFolder.mkdirs();
+        int migrated = 0;
+        
+        for (File file : files) {
+            try {
+                UUID playerId = parsePlayerId(file);
+                
+                // A binary file already exists if an earlier migration stopped before moving the YAML file
+                if (!expiryTimes.containsKey(playerId)) {
+                    InventorySnapshot stored = InventoryStorage.readYaml(file, playerId);
+                    InventoryStorage.writeBinary(binaryFile(playerId), stored);
+                    expiryTimes.put(playerId, stored.getExpiryTime());
+                    migrated++;
+                }
+                
+                Files.move(file.toPath(), new File(backupFolder, file.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                logger.warning("Failed to migrate inventory: " + file.getName());
+                e.printStackTrace();
+            }
+        }
+        
+        if (migrated > 0) {
+            logger.info("Migrated " + migrated + " virtual inventories to the binary format, "
+                    + "the YAML files were moved to " + backupFolder.getPath());
+        }
+        return migrated > 0;
+    }
+    
+    /**
+     * Read a stored inventory, unreadable files are renamed so they are not overwritten
+     */
+    @Override
+    public InventorySnapshot read(UUID playerId) throws IOException {
+        File file = binaryFile(playerId);
+        if (!file.exists()) {
+            return null;
+        }
+        
+        try {
+            return InventoryStorage.readBinary(file, playerId);
+        } catch (IOException e) {
+            file.renameTo(new File(dataFolder, file.getName() + ".corrupt"));
+            throw e;
+        }
+    }
+    
+    @Override
+    public void write(Map<UUID, Long> index, List<UUID> deleted, List<InventorySnapshot> snapshots) throws IOException {
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        
+        // The index goes first, so a file is never on disk without its index entry
+        if (index != null) {
+            InventoryStorage.writeIndex(new File(dataFolder, InventoryStorage.INDEX_FILE), index);
+        }
+        
+        for (UUID playerId : deleted) {
+            binaryFile(playerId).delete();
+        }
+        
+        for (InventorySnapshot snapshot : snapshots) {
+            try {
+                InventoryStorage.writeBinary(binaryFile(snapshot.getPlayerId()), snapshot);
+                snapshot.markWritten();
+            } catch (IOException e) {
+                logger.warning("Failed to save inventory: " + snapshot.getPlayerId());
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        // Files are closed after every write
+    }
+    
+    /**
+     * Get the owner of an inventory file from its name
+     * @param file Inventory file
+     * @return Player UUID
+     */
+    private UUID parsePlayerId(File file) {
+        String fileName = file.getName();
+        return UUID.fromString(fileName.substring(0, fileName.lastIndexOf('.')));
+    }
+    
+    private File binaryFile(UUID playerId) {
+        return new File(dataFolder, playerId.toString() + InventoryStorage.BINARY_EXTENSION);
+    }
+}
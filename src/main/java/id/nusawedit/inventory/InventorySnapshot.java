@@ -0,0 +1,97 @@
+package id.nusawedit.inventory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Material;
+
+/**
+ * Immutable copy of a virtual inventory, taken on the main thread to be written elsewhere.
+ * Also used for inventories read from disk before they are loaded.
+ */
+class InventorySnapshot {
+    private final UUID playerId;
+    private final VirtualInventory inventory;
+    private final String title;
+    private final Map<Material, Long> contents;
+    private final long expiryTime;
+    private final long version;
+    
+    /**
+     * Capture an inventory, must be called on the main thread
+     * @param playerId Owner of the inventory
+     * @param inventory Inventory to capture
+     * @param expiryTime Expiry time in milliseconds
+     */
+    InventorySnapshot(UUID playerId, VirtualInventory inventory, long expiryTime) {
+        this.playerId = playerId;
+        this.inventory = inventory;
+        this.title = inventory.getTitle();
+        this.expiryTime = expiryTime;
+        
+        // Read together, so the version matches the contents
+        synchronized (inventory) {
+            this.version = inventory.getVersion();
+            this.contents = Collections.unmodifiableMap(inventory.getContents());
+        }
+    }
+    
+    /**
+     * Create a snapshot of a stored inventory
+     * @param playerId Owner of the inventory
+     * @param title Inventory title
+     * @param contents Material amounts
+     * @param expiryTime Expiry time in milliseconds
+     */
+    InventorySnapshot(UUID playerId, String title, Map<Material, Long> contents, long expiryTime) {
+        this.playerId = playerId;
+        this.inventory = null;
+        this.title = title;
+        this.contents = Collections.unmodifiableMap(contents);
+        this.expiryTime = expiryTime;
+        this.version = 0;
+    }
+    
+    UUID getPlayerId() {
+        return playerId;
+    }
+    
+    String getTitle() {
+        return title;
+    }
+    
+    /**
+     * Get the captured material amounts
+     * @return Unmodifiable material amounts
+     */
+    Map<Material, Long> getContents() {
+        return contents;
+    }
+    
+    long getExpiryTime() {
+        return expiryTime;
+    }
+    
+    /**
+     * Record that this snapshot was written, changes made since keep the inventory dirty
+     */
+    void markWritten() {
+        if (inventory != null) {
+            inventory.markSaved(version);
+        }
+    }
+    
+    /**
+     * Create a live inventory from a stored one
+     * @return Inventory with the stored contents, not dirty
+     */
+    VirtualInventory toInventory() {
+        VirtualInventory loaded = new VirtualInventory(title);
+        for (Map.Entry<Material, Long> entry : contents.entrySet()) {
+            loaded.addMaterial(entry.getKey(), entry.getValue());
+        }
+        loaded.markSaved(loaded.getVersion());
+        return loaded;
+    }
+}
@@ -0,0 +1,242 @@
+package id.nusawedit.inventory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Reads and writes virtual inventory files.
+ *
+ * Inventories are stored in a small binary format: a header, the title, the expiry
+ * time and one material name and count per stored material. Files are written to a
+ * temporary file first and renamed over the old one, so a crash never leaves a
+ * half-written inventory. YAML is still read for migration and written for exports.
+ * The expiry times of all inventories are also kept in a separate index file, so
+ * startup only has to read that index instead of every inventory.
+ */
+class InventoryStorage {
+    static final String BINARY_EXTENSION = ".dat";
+    static final String YAML_EXTENSION = ".yml";
+    static final String INDEX_FILE = "expiry.idx";
+    
+    private static final int MAGIC = 0x4E574549; // "NWEI"
+    private static final int INDEX_MAGIC = 0x4E574558; // "NWEX"
+    private static final int FORMAT_VERSION = 1;
+    
+    private InventoryStorage() {
+    }
+    
+    /**
+     * Read a binary inventory file
+     * @param file File to read
+     * @param playerId Owner of the inventory
+     * @return Stored inventory
+     * @throws IOException If the file cannot be read or is not an inventory file
+     */
+    static InventorySnapshot readBinary(File file, UUID playerId) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a virtual inventory file");
+            }
+            int version = in.readUnsignedByte();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("Unsupported inventory format version " + version);
+            }
+            
+            String title = in.readUTF();
+            long expiryTime = in.readLong();
+            int entries = in.readInt();
+            Map<Material, Long> contents = new EnumMap<>(Material.class);
+            for (int i = 0; i < entries; i++) {
+                // Names, not ordinals, so files survive material list changes between versions
+                Material material = Material.getMaterial(in.readUTF());
+                long amount = in.readLong();
+                if (material != null && amount > 0) {
+                    contents.merge(material, amount, Long::sum);
+                }
+            }
+            return new InventorySnapshot(playerId, title, contents, expiryTime);
+        }
+    }
+    
+    /**
+     * Write an inventory in the binary format, replacing the file atomically
+     * @param file File to write
+     * @param snapshot Inventory to write
+     * @throws IOException If writing fails; the old file is then left untouched
+     */
+    static void writeBinary(File file, InventorySnapshot snapshot) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(snapshot.getTitle());
+            out.writeLong(snapshot.getExpiryTime());
+            out.writeInt(snapshot.getContents().size());
+            for (Map.Entry<Material, Long> entry : snapshot.getContents().entrySet()) {
+                out.writeUTF(entry.getKey().name());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        replace(temp, file);
+    }
+    
+    /**
+     * Read the expiry index
+     * @param file Index file
+     * @return Expiry time in milliseconds of each stored inventory
+     * @throws IOException If the file cannot be read or is not an index file
+     */
+    static Map<UUID, Long> readIndex(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Not a virtual inventory index");
+            }
+            int version = in.readUnsignedByte();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("Unsupported index format version " + version);
+            }
+            
+            int entries = in.readInt();
+            Map<UUID, Long> expiryTimes = new HashMap<>(entries * 2);
+            for (int i = 0; i < entries; i++) {
+                UUID playerId = new UUID(in.readLong(), in.readLong());
+                expiryTimes.put(playerId, in.readLong());
+            }
+            return expiryTimes;
+        }
+    }
+    
+    /**
+     * Write the expiry index, replacing the file atomically
+     * @param file Index file
+     * @param expiryTimes Expiry time in milliseconds of each stored inventory
+     * @throws IOException If writing fails; the old file is then left untouched
+     */
+    static void writeIndex(File file, Map<UUID, Long> expiryTimes) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(expiryTimes.size());
+            for (Map.Entry<UUID, Long> entry : expiryTimes.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        replace(temp, file);
+    }
+    
+    /**
+     * Move a fully written temporary file over the real one
+     * @param temp Temporary file
+     * @param file File to replace
+     * @throws IOException If the move fails
+     */
+    private static void replace(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Read a YAML inventory file, including files that stored item stacks per slot
+     * @param file File to read
+     * @param playerId Owner of the inventory
+     * @return Stored inventory
+     */
+    @SuppressWarnings("unchecked")
+    static InventorySnapshot readYaml(File file, UUID playerId) {
+        FileConfiguration config = YamlConfiguration.loadConfiguration(file);
+        Map<Material, Long> contents = new EnumMap<>(Material.class);
+        
+        if (config.isConfigurationSection("materials")) {
+            for (String key : config.getConfigurationSection("materials").getKeys(false)) {
+                Material material = Material.getMaterial(key);
+                long amount = config.getLong("materials." + key);
+                if (material != null && amount > 0) {
+                    contents.merge(material, amount, Long::sum);
+                }
+            }
+        } else if (config.isConfigurationSection("contents")) {
+            // Older files stored item stacks per slot
+            ConfigurationSection section = config.getConfigurationSection("contents");
+            for (String key : section.getKeys(false)) {
+                Object value = section.get(key);
+                ItemStack item = null;
+                if (value instanceof ItemStack) {
+                    item = (ItemStack) value;
+                } else if (value instanceof ConfigurationSection) {
+                    // Handle older format where items were serialized as maps
+                    try {
+                        item = ItemStack.deserialize(((ConfigurationSection) value).getValues(false));
+                    } catch (Exception e) {
+                        // Ignore invalid items
+                    }
+                } else if (value instanceof Map) {
+                    try {
+                        item = ItemStack.deserialize((Map<String, Object>) value);
+                    } catch (Exception e) {
+                        // Ignore invalid items
+                    }
+                }
+                if (item != null) {
+                    contents.merge(item.getType(), (long) item.getAmount(), Long::sum);
+                }
+            }
+        }
+        
+        String title = config.getString("name", "NusaWEdit Materials");
+        long expiryTime = config.getLong("expiry-time", System.currentTimeMillis() + (24 * 60 * 60 * 1000));
+        return new InventorySnapshot(playerId, title, contents, expiryTime);
+    }
+    
+    /**
+     * Write an inventory as YAML, used for exports
+     * @param file File to write
+     * @param snapshot Inventory to write
+     * @throws IOException If writing fails
+     */
+    static void writeYaml(File file, InventorySnapshot snapshot) throws IOException {
+        FileConfiguration config = new YamlConfiguration();
+        
+        // Save basic info
+        config.set("name", snapshot.getTitle());
+        
+        // Save material amounts
+        for (Map.Entry<Material, Long> material : snapshot.getContents().entrySet()) {
+            config.set("materials." + material.getKey().name(), material.getValue());
+        }
+        
+        // Save expiry time
+        config.set("expiry-time", snapshot.getExpiryTime());
+        config.save(file);
+    }
+}
@@ -0,0 +1,43 @@
+package id.nusawedit.inventory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Where virtual inventories are kept between restarts.
+ *
+ * {@link #read(UUID)} may be called from any thread, {@link #write(Map, List, List)}
+ * is only called from the inventory writer thread.
+ */
+interface InventoryStore {
+    /**
+     * Open the store, called once at startup
+     * @return Expiry time in milliseconds of every stored inventory
+     * @throws IOException If the store cannot be opened
+     */
+    Map<UUID, Long> open() throws IOException;
+    
+    /**
+     * Read a stored inventory
+     * @param playerId Owner of the inventory
+     * @return Stored inventory, or null if the player has none
+     * @throws IOException If the inventory cannot be read
+     */
+    InventorySnapshot read(UUID playerId) throws IOException;
+    
+    /**
+     * Write a group of changes, marking each snapshot written once it is stored
+     * @param index Expiry time of every stored inventory, null if it did not change
+     * @param deleted Players whose inventories are deleted
+     * @param snapshots Inventories to write
+     * @throws IOException If nothing could be written; snapshots not marked written stay dirty
+     */
+    void write(Map<UUID, Long> index, List<UUID> deleted, List<InventorySnapshot> snapshots) throws IOException;
+    
+    /**
+     * Close the store, called once after the last write
+     */
+    void close();
+}
@@ -0,0 +1,100 @@
+package id.nusawedit.inventory;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Material;
+
+/**
+ * Materials set aside in a player's inventory for a running block operation.
+ *
+ * Blocks are paid for with {@link #use(Material)}, which only counts; the used amounts
+ * are taken from the inventory once per batch by {@link #commit()}. {@link #release()}
+ * returns whatever was not used, whether the operation finished or was cancelled.
+ * Only used on the main thread.
+ */
+public class MaterialReservation {
+    private static final int MATERIAL_COUNT = Material.values().length;
+    
+    private final VirtualInventoryManager manager;
+    private final UUID playerId;
+    private final VirtualInventory inventory;
+    private final long[] remaining = new long[MATERIAL_COUNT];
+    private final long[] pending = new long[MATERIAL_COUNT];
+    private final Set<Material> materials = EnumSet.noneOf(Material.class);
+    private boolean released;
+    
+    /**
+     * Create a reservation for materials already reserved in the inventory
+     * @param manager Inventory manager
+     * @param playerId Owner of the inventory
+     * @param inventory Inventory holding the reserved materials
+     * @param amounts Reserved amount of each material
+     */
+    MaterialReservation(VirtualInventoryManager manager, UUID playerId, VirtualInventory inventory,
+                        Map<Material, Long> amounts) {
+        this.manager = manager;
+        this.playerId = playerId;
+        this.inventory = inventory;
+        for (Map.Entry<Material, Long> entry : amounts.entrySet()) {
+            remaining[entry.getKey().ordinal()] += entry.getValue();
+            materials.add(entry.getKey());
+        }
+    }
+    
+    /**
+     * Pay for one block, reserving more from the inventory if the reserved amount ran out
+     * @param material Material placed
+     * @return true if the block is paid for
+     */
+    public boolean use(Material material) {
+        int index = material.ordinal();
+        if (remaining[index] > 0) {
+            remaining[index]--;
+        } else if (released || !inventory.reserve(material, 1)) {
+            return false;
+        } else {
+            materials.add(material);
+        }
+        pending[index]++;
+        return true;
+    }
+    
+    /**
+     * Take the materials used since the last commit from the inventory
+     */
+    public void commit() {
+        boolean changed = false;
+        for (Material material : materials) {
+            int index = material.ordinal();
+            if (pending[index] > 0) {
+                inventory.commitReserved(material, pending[index]);
+                pending[index] = 0;
+                changed = true;
+            }
+        }
+        if (changed) {
+            manager.updateExpiryTime(playerId);
+        }
+    }
+    
+    /**
+     * Commit the used materials and return the rest to the inventory, does nothing if already released
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        commit();
+        for (Material material : materials) {
+            int index = material.ordinal();
+            if (remaining[index] > 0) {
+                inventory.releaseReserved(material, remaining[index]);
+                remaining[index] = 0;
+            }
+        }
+        released = true;
+    }
+}
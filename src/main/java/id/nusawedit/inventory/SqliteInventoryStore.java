@@ -0,0 +1,242 @@
+package id.nusawedit.inventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+
+/**
+ * Keeps virtual inventories in a local SQLite database, one row per stored material.
+ *
+ * The driver ships with the server, so no external service or extra library is needed.
+ * A few connections are kept open in a small pool, so logins can read while the
+ * writer thread commits. Each call to {@link #write(Map, List, List)} is one
+ * transaction with batched statements, so a whole save costs a single commit.
+ */
+class SqliteInventoryStore implements InventoryStore {
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+    
+    private final File databaseFile;
+    private final int poolSize;
+    private BlockingQueue<Connection> pool;
+    
+    /**
+     * Create a SQLite store
+     * @param databaseFile Database file, created if missing
+     * @param poolSize Number of connections to keep open
+     */
+    SqliteInventoryStore(File databaseFile, int poolSize) {
+        this.databaseFile = databaseFile;
+        this.poolSize = Math.max(2, poolSize);
+    }
+    
+    @Override
+    public Map<UUID, Long> open() throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("SQLite driver not found", e);
+        }
+        
+        databaseFile.getParentFile().mkdirs();
+        pool = new ArrayBlockingQueue<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+                try (Statement statement = connection.createStatement()) {
+                    // WAL lets readers run while the writer commits
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    statement.execute("PRAGMA synchronous=NORMAL");
+                    statement.execute("PRAGMA busy_timeout=5000");
+                }
+                pool.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Failed to open " + databaseFile.getName(), e);
+        }
+        
+        Connection connection = borrow();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS inventories ("
+                    + "player_id TEXT PRIMARY KEY, "
+                    + "title TEXT NOT NULL, "
+                    + "expiry_time INTEGER NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS inventory_materials ("
+                    + "player_id TEXT NOT NULL, "
+                    + "material TEXT NOT NULL, "
+                    + "amount INTEGER NOT NULL, "
+                    + "PRIMARY KEY (player_id, material))");
+            // For admin queries such as the largest holders of a material
+            statement.execute("CREATE INDEX IF NOT EXISTS inventory_materials_material "
+                    + "ON inventory_materials (material, amount)");
+            
+            Map<UUID, Long> expiryTimes = new HashMap<>();
+            try (ResultSet result = statement.executeQuery("SELECT player_id, expiry_time FROM inventories")) {
+                while (result.next()) {
+                    expiryTimes.put(UUID.fromString(result.getString(1)), result.getLong(2));
+                }
+            }
+            return expiryTimes;
+        } catch (SQLException e) {
+            throw new IOException("Failed to load inventories from " + databaseFile.getName(), e);
+        } finally {
+            release(connection);
+        }
+    }
+    
+    @Override
+    public InventorySnapshot read(UUID playerId) throws IOException {
+        Connection connection = borrow();
+        try (PreparedStatement inventory = connection.prepareStatement(
+                    "SELECT title, expiry_time FROM inventories WHERE player_id = ?");
+                PreparedStatement materials = connection.prepareStatement(
+                    "SELECT material, amount FROM inventory_materials WHERE player_id = ?")) {
+            String title;
+            long expiryTime;
+            inventory.setString(1, playerId.toString());
+            try (ResultSet result = inventory.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+                title = result.getString(1);
+                expiryTime = result.getLong(2);
+            }
+            
+            Map<Material, Long> contents = new EnumMap<>(Material.class);
+            materials.setString(1, playerId.toString());
+            try (ResultSet result = materials.executeQuery()) {
+                while (result.next()) {
+                    Material material = Material.getMaterial(result.getString(1));
+                    if (material != null) {
+                        contents.put(material, result.getLong(2));
+                    }
+                }
+            }
+            return new InventorySnapshot(playerId, title, contents, expiryTime);
+        } catch (SQLException e) {
+            throw new IOException("Failed to read inventory " + playerId, e);
+        } finally {
+            release(connection);
+        }
+    }
+    
+    /**
+     * Write all changes in one transaction; the expiry times live in the inventory rows,
+     * so the separate index is not needed
+     */
+    @Override
+    public void write(Map<UUID, Long> index, List<UUID> deleted, List<InventorySnapshot> snapshots) throws IOException {
+        if (deleted.isEmpty() && snapshots.isEmpty()) {
+            return;
+        }
+        
+        Connection connection = borrow();
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteInventory = connection.prepareStatement(
+                        "DELETE FROM inventories WHERE player_id = ?");
+                    PreparedStatement deleteMaterials = connection.prepareStatement(
+                        "DELETE FROM inventory_materials WHERE player_id = ?");
+                    PreparedStatement upsertInventory = connection.prepareStatement(
+                        "INSERT INTO inventories (player_id, title, expiry_time) VALUES (?, ?, ?) "
+                        + "ON CONFLICT (player_id) DO UPDATE SET title = excluded.title, expiry_time = excluded.expiry_time");
+                    PreparedStatement insertMaterial = connection.prepareStatement(
+                        "INSERT INTO inventory_materials (player_id, material, amount) VALUES (?, ?, ?)")) {
+                for (UUID playerId : deleted) {
+                    deleteInventory.setString(1, playerId.toString());
+                    deleteInventory.addBatch();
+                    deleteMaterials.setString(1, playerId.toString());
+                    deleteMaterials.addBatch();
+                }
+                
+                // The ledger rows of a written inventory are replaced, so materials used up disappear
+                for (InventorySnapshot snapshot : snapshots) {
+                    String playerId = snapshot.getPlayerId().toString();
+                    upsertInventory.setString(1, playerId);
+                    upsertInventory.setString(2, snapshot.getTitle());
+                    upsertInventory.setLong(3, snapshot.getExpiryTime());
+                    upsertInventory.addBatch();
+                    deleteMaterials.setString(1, playerId);
+                    deleteMaterials.addBatch();
+                    for (Map.Entry<Material, Long> entry : snapshot.getContents().entrySet()) {
+                        insertMaterial.setString(1, playerId);
+                        insertMaterial.setString(2, entry.getKey().name());
+                        insertMaterial.setLong(3, entry.getValue());
+                        insertMaterial.addBatch();
+                    }
+                }
+                
+                deleteInventory.executeBatch();
+                deleteMaterials.executeBatch();
+                upsertInventory.executeBatch();
+                insertMaterial.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to save " + snapshots.size() + " inventories", e);
+        } finally {
+            release(connection);
+        }
+        
+        for (InventorySnapshot snapshot : snapshots) {
+            snapshot.markWritten();
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (pool == null) {
+            return;
+        }
+        Connection connection;
+        while ((connection = pool.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Closing anyway
+            }
+        }
+    }
+    
+    /**
+     * Take a connection from the pool, waiting if all are in use
+     * @return Connection, to be given back with {@link #release(Connection)}
+     * @throws IOException If no connection became free in time
+     */
+    private Connection borrow() throws IOException {
+        try {
+            Connection connection = pool.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (connection == null) {
+                throw new IOException("Timed out waiting for a database connection");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a database connection", e);
+        }
+    }
+    
+    private void release(Connection connection) {
+        pool.offer(connection);
+    }
+}
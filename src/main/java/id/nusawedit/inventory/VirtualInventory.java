@@ -1,6 +1,8 @@
 package id.nusawedit.inventory;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 import org.bukkit.Bukkit;
@@ -9,11 +11,27 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 /**
- * Represents a player's virtual inventory for materials
+ * Represents a player's virtual inventory for materials.
+ *
+ * The stored amounts live in a ledger of counters indexed by material ordinal,
+ * so checking, adding and removing materials is O(1) and not limited by slots.
+ * The Bukkit inventory is only a view for depositing and withdrawing items:
+ * opening it moves stacks out of the ledger, closing it moves what is left back in.
+ * Every change bumps a version, so only inventories changed since their last save are written.
+ * Materials reserved by a running operation are kept apart from the available counts but
+ * are still saved as owned, so a crash before they are used simply hands them back.
  */
 public class VirtualInventory {
+    private static final Material[] MATERIALS = Material.values();
+    private static final int VIEW_SIZE = 54; // 6 rows
+    
     private final String title;
-    private final Inventory inventory;
+    private final long[] counts = new long[MATERIALS.length];
+    private final long[] reserved = new long[MATERIALS.length];
+    private long reservedTotal;
+    private Inventory view;
+    private long version;
+    private long savedVersion;
     
     /**
      * Create a new virtual inventory
@@ -21,7 +39,6 @@ public class VirtualInventory {
      */
     public VirtualInventory(String title) {
         this.title = title;
-        this.inventory = Bukkit.createInventory(null, 54, title); // 6 rows
     }
     
     /**
@@ -33,36 +50,102 @@ public class VirtualInventory {
     }
     
     /**
-     * Get the Bukkit inventory
-     * @return Inventory
+     * Open the deposit/withdraw view, filled with as many stored stacks as fit
+     * @return Bukkit inventory to show
+     */
+    public synchronized Inventory openView() {
+        if (view != null) {
+            return view;
+        }
+        
+        view = Bukkit.createInventory(null, VIEW_SIZE, title);
+        int slot = 0;
+        for (int i = 0; i < counts.length && slot < VIEW_SIZE; i++) {
+            Material material = MATERIALS[i];
+            int stackSize = material.getMaxStackSize();
+            while (counts[i] > 0 && slot < VIEW_SIZE) {
+                int amount = (int) Math.min(stackSize, counts[i]);
+                view.setItem(slot++, new ItemStack(material, amount));
+                counts[i] -= amount;
+            }
+        }
+        return view;
+    }
+    
+    /**
+     * Get the open view
+     * @return Bukkit inventory, or null if the view is not open
      */
-    public Inventory getInventory() {
-        return inventory;
+    public synchronized Inventory getView() {
+        return view;
     }
     
     /**
-     * Try to add an item to the inventory
-     * @param item Item to add
-     * @return true if added successfully
+     * Check if an inventory is this ledger's open view
+     * @param inventory Inventory
+     * @return true if it is the open view
      */
-    public boolean addItem(ItemStack item) {
-        HashMap<Integer, ItemStack> leftover = inventory.addItem(item);
-        return leftover.isEmpty(); // True if all items were added
+    public synchronized boolean isView(Inventory inventory) {
+        return view != null && view == inventory;
+    }
+    
+    /**
+     * Close the view, moving its plain stacks back into the ledger
+     * @return Items that cannot be stored as plain materials, to give back to the player
+     */
+    public synchronized List<ItemStack> closeView() {
+        List<ItemStack> rejected = new ArrayList<>();
+        if (view == null) {
+            return rejected;
+        }
+        
+        Inventory closing = view;
+        view = null;
+        for (ItemStack item : closing.getContents()) {
+            if (item == null) {
+                continue;
+            }
+            // Named or enchanted items would lose their data as a plain count
+            if (item.hasItemMeta() || !item.getType().isBlock()) {
+                rejected.add(item);
+            } else {
+                counts[item.getType().ordinal()] += item.getAmount();
+            }
+        }
+        closing.clear();
+        version++;
+        return rejected;
     }
     
     /**
-     * Count how much of a specific material is in the inventory
+     * Get how much of a specific material is stored
      * @param material Material to count
      * @return Amount of material
      */
-    public int countMaterial(Material material) {
-        int count = 0;
-        for (ItemStack item : inventory.getContents()) {
-            if (item != null && item.getType() == material) {
-                count += item.getAmount();
-            }
+    public synchronized long countMaterial(Material material) {
+        return counts[material.ordinal()];
+    }
+    
+    /**
+     * Check if enough of a material is stored
+     * @param material Material
+     * @param amount Amount needed
+     * @return true if at least the amount is stored
+     */
+    public synchronized boolean hasMaterial(Material material, long amount) {
+        return counts[material.ordinal()] >= amount;
+    }
+    
+    /**
+     * Add an amount of a specific material
+     * @param material Material to add
+     * @param amount Amount to add
+     */
+    public synchronized void addMaterial(Material material, long amount) {
+        if (amount > 0) {
+            counts[material.ordinal()] += amount;
+            version++;
         }
-        return count;
     }
     
     /**
@@ -71,73 +154,114 @@ public class VirtualInventory {
      * @param amount Amount to remove
      * @return true if removed successfully
      */
-    public boolean removeMaterial(Material material, int amount) {
-        if (countMaterial(material) < amount) {
+    public synchronized boolean removeMaterial(Material material, long amount) {
+        int index = material.ordinal();
+        if (counts[index] < amount) {
             return false;
         }
-        
-        int remainingToRemove = amount;
-        
-        for (int i = 0; i < inventory.getSize(); i++) {
-            ItemStack item = inventory.getItem(i);
-            if (item != null && item.getType() == material) {
-                if (item.getAmount() <= remainingToRemove) {
-                    // Remove entire stack
-                    remainingToRemove -= item.getAmount();
-                    inventory.setItem(i, null);
-                } else {
-                    // Remove partial stack
-                    item.setAmount(item.getAmount() - remainingToRemove);
-                    remainingToRemove = 0;
-                }
-                
-                if (remainingToRemove <= 0) {
-                    break;
-                }
-            }
+        counts[index] -= amount;
+        version++;
+        return true;
+    }
+    
+    /**
+     * Move an amount from the available materials to the reserved ones
+     * @param material Material to reserve
+     * @param amount Amount to reserve
+     * @return true if enough was available
+     */
+    synchronized boolean reserve(Material material, long amount) {
+        int index = material.ordinal();
+        if (counts[index] < amount) {
+            return false;
         }
-        
-        return remainingToRemove <= 0;
+        counts[index] -= amount;
+        reserved[index] += amount;
+        reservedTotal += amount;
+        return true;
     }
     
     /**
-     * Serialize inventory contents for storage
-     * @return Serialized contents
+     * Use up reserved materials
+     * @param material Reserved material
+     * @param amount Amount used
      */
-    public Map<String, Object> serializeContents() {
-        Map<String, Object> result = new HashMap<>();
-        ItemStack[] contents = inventory.getContents();
-        
-        for (int i = 0; i < contents.length; i++) {
-            if (contents[i] != null) {
-                result.put(Integer.toString(i), contents[i]);
+    synchronized void commitReserved(Material material, long amount) {
+        reserved[material.ordinal()] -= amount;
+        reservedTotal -= amount;
+        version++;
+    }
+    
+    /**
+     * Return unused reserved materials to the available ones
+     * @param material Reserved material
+     * @param amount Amount to return
+     */
+    synchronized void releaseReserved(Material material, long amount) {
+        int index = material.ordinal();
+        reserved[index] -= amount;
+        reservedTotal -= amount;
+        counts[index] += amount;
+    }
+    
+    /**
+     * Check if a running operation still holds reserved materials
+     * @return true if anything is reserved
+     */
+    synchronized boolean hasReservations() {
+        return reservedTotal > 0;
+    }
+    
+    /**
+     * Mark the inventory as changed, e.g. when its expiry time moved
+     */
+    public synchronized void markDirty() {
+        version++;
+    }
+    
+    /**
+     * Check if the inventory changed since it was last saved
+     * @return true if it needs saving
+     */
+    public synchronized boolean isDirty() {
+        return version != savedVersion;
+    }
+    
+    /**
+     * Get the current version, to pass to {@link #markSaved(long)} once written
+     * @return Version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Record that a version was written; later changes keep the inventory dirty
+     * @param savedVersion Version returned by {@link #getVersion()} before saving
+     */
+    public synchronized void markSaved(long savedVersion) {
+        this.savedVersion = Math.max(this.savedVersion, savedVersion);
+    }
+    
+    /**
+     * Get the stored amount of every material, including stacks in an open view and reserved materials
+     * @return Material amounts, without empty entries
+     */
+    public synchronized Map<Material, Long> getContents() {
+        Map<Material, Long> contents = new EnumMap<>(Material.class);
+        for (int i = 0; i < counts.length; i++) {
+            long owned = counts[i] + reserved[i];
+            if (owned > 0) {
+                contents.put(MATERIALS[i], owned);
             }
         }
-        
-        return result;
-    }
-    
-    /**
-     * Load inventory contents from serialized data
-     * @param serialized Serialized inventory contents
-     */
-    @SuppressWarnings("unchecked")
-    public void loadFromSerialized(Map<String, Object> serialized) {
-        for (Map.Entry<String, Object> entry : serialized.entrySet()) {
-            int slot = Integer.parseInt(entry.getKey());
-            if (slot >= 0 && slot < inventory.getSize()) {
-                if (entry.getValue() instanceof ItemStack) {
-                    inventory.setItem(slot, (ItemStack) entry.getValue());
-                } else if (entry.getValue() instanceof Map) {
-                    // Handle older format where items were serialized as maps
-                    try {
-                        ItemStack item = ItemStack.deserialize((Map<String, Object>) entry.getValue());
-                        inventory.setItem(slot, item);
-                    } catch (Exception e) {
-                        // Ignore invalid items
-                    }
+        if (view != null) {
+            for (ItemStack item : view.getContents()) {
+                if (item != null && !item.hasItemMeta() && item.getType().isBlock()) {
+                    contents.merge(item.getType(), (long) item.getAmount(), Long::sum);
                 }
             }
         }
+        return contents;
     }
-}
\ No newline at end of file
+}
@@ -4,15 +4,23 @@ import id.nusawedit.Plugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
@@ -20,85 +28,153 @@ import org.bukkit.scheduler.BukkitTask;
 
 /**
  * Manages virtual inventories for block storage
+ *
+ * Only inventories that changed since their last save are written. Changes are
+ * flushed by a delayed save, so several changes in a row cost one write. Saving
+ * copies the changed inventories on the main thread, and a single writer thread
+ * writes the copies in order, so the files are never written from live inventories.
+ *
+ * Inventories are kept in an {@link InventoryStore}, either one file per player or a
+ * local SQLite database. Only the expiry index is read at startup. Inventories are read from disk when a
+ * player logs in or when they are first needed, and dropped from memory again once
+ * their owner has left and everything is written.
  */
 public class VirtualInventoryManager {
+    private static final int MIGRATION_GROUP_SIZE = 500;
+    
     private final Plugin plugin;
+    
+    // Inventories in memory, a subset of the stored ones
     private final Map<UUID, VirtualInventory> playerInventories = new ConcurrentHashMap<>();
+    
+    // Expiry time of every stored inventory, also used to know which inventories exist on disk
     private final Map<UUID, Long> inventoryExpiryTimes = new ConcurrentHashMap<>();
-    private BukkitTask cleanupTask;
-    private BukkitTask warningTask;
+    
+    // Expired inventories whose files still have to be deleted
+    private final Set<UUID> deletedInventories = ConcurrentHashMap.newKeySet();
+    
+    // Inventories of players who left, dropped from memory once written
+    private final Set<UUID> pendingEviction = ConcurrentHashMap.newKeySet();
+    
+    // Upcoming expiries and warnings, earliest first
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+    private final ExpiryQueue warningQueue = new ExpiryQueue();
+    private final AtomicBoolean indexDirty = new AtomicBoolean();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final ExecutorService writer;
+    private InventoryStore store;
+    private String storeType;
+    private BukkitTask expiryTask;
+    private BukkitTask saveTask;
     
     public VirtualInventoryManager(Plugin plugin) {
         this.plugin = plugin;
-        loadInventories();
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "NusaWEdit-Inventory-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        openStore();
     }
     
     /**
-     * Start the inventory cleanup task
+     * Open the configured store and read its expiry index, falling back to files if the database cannot be used
      */
-    public void startCleanupTask() {
-        // Run cleanup check every hour
-        this.cleanupTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::checkExpiringInventories, 
-                20 * 60 * 60, // 1 hour delay
-                20 * 60 * 60  // 1 hour period
-        );
-        
-        // Run warning check every minute
-        int warningMinutes = plugin.getConfigManager().getInventoryWarningMinutes();
-        this.warningTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::checkWarningInventories,
-                20 * 60,     // 1 minute delay
-                20 * 60      // 1 minute period
-        );
+    private void openStore() {
+        storeType = plugin.getConfigManager().getStorageType().equalsIgnoreCase("sqlite") ? "sqlite" : "file";
+        store = createStore(storeType);
+        try {
+            inventoryExpiryTimes.putAll(store.open());
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to open inventory storage, using files instead: " + e.getMessage());
+            e.printStackTrace();
+            store.close();
+            storeType = "file";
+            store = createStore(storeType);
+            try {
+                inventoryExpiryTimes.putAll(store.open());
+            } catch (IOException fileError) {
+                plugin.getLogger().severe("Failed to load virtual inventories: " + fileError.getMessage());
+                fileError.printStackTrace();
+            }
+        }
     }
     
     /**
-     * Check for inventories that will expire soon and warn players
+     * Create a store by type
+     * @param type "file" or "sqlite"
+     * @return Unopened store
      */
-    private void checkWarningInventories() {
-        int warningMinutes = plugin.getConfigManager().getInventoryWarningMinutes();
-        long warningThreshold = System.currentTimeMillis() + (warningMinutes * 60 * 1000);
-        
+    private InventoryStore createStore(String type) {
+        if (type.equalsIgnoreCase("sqlite")) {
+            return new SqliteInventoryStore(new File(plugin.getDataFolder(), "inventories.db"),
+                    plugin.getConfigManager().getStoragePoolSize());
+        }
+        return new FileInventoryStore(new File(plugin.getDataFolder(), "inventories"), plugin.getLogger());
+    }
+    
+    /**
+     * Start the inventory expiry task
+     */
+    public void startCleanupTask() {
+        // The warning time may have changed with a reload
+        expiryQueue.clear();
+        warningQueue.clear();
         for (Map.Entry<UUID, Long> entry : inventoryExpiryTimes.entrySet()) {
-            UUID playerId = entry.getKey();
-            long expiryTime = entry.getValue();
-            
-            // Check if inventory expires within warning period
-            if (expiryTime < warningThreshold && expiryTime > System.currentTimeMillis()) {
-                Player player = Bukkit.getPlayer(playerId);
-                if (player != null && player.isOnline()) {
-                    long minutesLeft = (expiryTime - System.currentTimeMillis()) / (60 * 1000);
-                    player.sendMessage(plugin.getMessageManager().getFormattedMessage(
-    "inventory.expiry-warning", minutesLeft));
-                }
-            }
+            scheduleExpiry(entry.getKey(), entry.getValue());
         }
+        
+        // Checking is cheap when nothing is due, so expiries and warnings fire within a second
+        this.expiryTask = Bukkit.getScheduler().runTaskTimer(plugin, this::processDueInventories, 20, 20);
+    }
+    
+    /**
+     * Queue the expiry and the expiry warning of an inventory, replacing earlier ones
+     * @param playerId Player UUID
+     * @param expiryTime Expiry time in milliseconds
+     */
+    private void scheduleExpiry(UUID playerId, long expiryTime) {
+        long warningMillis = plugin.getConfigManager().getInventoryWarningMinutes() * 60L * 1000L;
+        expiryQueue.schedule(playerId, expiryTime);
+        warningQueue.schedule(playerId, expiryTime - warningMillis);
     }
     
     /**
-     * Check for expired inventories and clean them up
+     * Warn players whose inventory expires soon and clean up expired inventories
      */
-    private void checkExpiringInventories() {
+    private void processDueInventories() {
         long currentTime = System.currentTimeMillis();
         
-        // Find expired inventories
-        inventoryExpiryTimes.entrySet().removeIf(entry -> {
-            if (entry.getValue() < currentTime) {
-                UUID playerId = entry.getKey();
-                playerInventories.remove(playerId);
-                
-                // Notify player if online
-                Player player = Bukkit.getPlayer(playerId);
-                if (player != null && player.isOnline()) {
-                    player.sendMessage(plugin.getMessageManager().getMessage("inventory.expired"));
-                }
-                
-                return true; // Remove from map
+        for (UUID playerId : warningQueue.pollDue(currentTime)) {
+            Long expiryTime = inventoryExpiryTimes.get(playerId);
+            Player player = Bukkit.getPlayer(playerId);
+            if (expiryTime != null && expiryTime > currentTime && player != null) {
+                long minutesLeft = (expiryTime - currentTime) / (60 * 1000);
+                player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+                        "inventory.expiry-warning", minutesLeft));
             }
-            return false;
-        });
+        }
         
-        // Save changes
-        saveInventories();
+        List<UUID> expired = expiryQueue.pollDue(currentTime);
+        for (UUID playerId : expired) {
+            inventoryExpiryTimes.remove(playerId);
+            warningQueue.remove(playerId);
+            playerInventories.remove(playerId);
+            pendingEviction.remove(playerId);
+            deletedInventories.add(playerId);
+            indexDirty.set(true);
+            
+            // Notify player if online
+            Player player = Bukkit.getPlayer(playerId);
+            if (player != null) {
+                player.sendMessage(plugin.getMessageManager().getMessage("inventory.expired"));
+            }
+        }
+        
+        // Save changes and delete the expired files
+        if (!expired.isEmpty()) {
+            scheduleSave();
+        }
     }
     
     /**
@@ -107,25 +183,149 @@ public class VirtualInventoryManager {
      */
     public void openInventory(Player player) {
         UUID playerId = player.getUniqueId();
-        VirtualInventory virtualInv = playerInventories.computeIfAbsent(playerId, 
-                id -> new VirtualInventory(player.getName() + "'s NusaWEdit Materials"));
+        VirtualInventory virtualInv = getOrCreateInventory(player);
         
         // Update expiry time - 24 hours from now
         updateExpiryTime(playerId);
         
-        // Open the inventory
-        player.openInventory(virtualInv.getInventory());
+        // Open the deposit/withdraw view
+        player.openInventory(virtualInv.openView());
         player.sendMessage(plugin.getMessageManager().getMessage("inventory.opened"));
     }
     
+    /**
+     * Move the contents of a closed view back into the player's ledger
+     * @param player Player who closed the inventory
+     * @param inventory Closed inventory
+     */
+    public void handleViewClosed(Player player, Inventory inventory) {
+        VirtualInventory virtualInv = playerInventories.get(player.getUniqueId());
+        if (virtualInv == null || !virtualInv.isView(inventory)) {
+            return;
+        }
+        
+        // Items that are not plain materials go back to the player
+        for (ItemStack item : virtualInv.closeView()) {
+            for (ItemStack leftover : player.getInventory().addItem(item).values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+            }
+        }
+        updateExpiryTime(player.getUniqueId());
+    }
+    
+    /**
+     * Read a player's inventory before they join, called off the main thread
+     * @param playerId Player UUID
+     */
+    public void preloadInventory(UUID playerId) {
+        pendingEviction.remove(playerId);
+        getInventory(playerId);
+    }
+    
+    /**
+     * Drop a player's inventory from memory after they left, once it is written
+     * @param playerId Player UUID
+     */
+    public void unloadInventory(UUID playerId) {
+        if (playerInventories.containsKey(playerId) && plugin.isEnabled()) {
+            pendingEviction.add(playerId);
+            // The player still counts as online during the quit event, so check on the next tick
+            Bukkit.getScheduler().runTask(plugin, this::evictIdleInventories);
+        }
+    }
+    
+    /**
+     * Drop the inventories of players who left if nothing is left to write, must be called on the main thread
+     */
+    private void evictIdleInventories() {
+        for (UUID playerId : pendingEviction) {
+            VirtualInventory virtualInv = playerInventories.get(playerId);
+            if (virtualInv == null || Bukkit.getPlayer(playerId) != null) {
+                pendingEviction.remove(playerId);
+            } else if (!virtualInv.isDirty() && virtualInv.getView() == null && !virtualInv.hasReservations()) {
+                playerInventories.remove(playerId);
+                pendingEviction.remove(playerId);
+            }
+        }
+    }
+    
+    /**
+     * Get a player's inventory, reading it from disk if it is not in memory
+     * @param playerId Player UUID
+     * @return Inventory, or null if the player has none
+     */
+    private VirtualInventory getInventory(UUID playerId) {
+        VirtualInventory virtualInv = playerInventories.get(playerId);
+        if (virtualInv != null || !inventoryExpiryTimes.containsKey(playerId)) {
+            return virtualInv;
+        }
+        return playerInventories.computeIfAbsent(playerId, this::readInventory);
+    }
+    
+    /**
+     * Get a player's inventory, creating an empty one if the player has none
+     * @param player Player
+     * @return Inventory
+     */
+    private VirtualInventory getOrCreateInventory(Player player) {
+        VirtualInventory virtualInv = getInventory(player.getUniqueId());
+        if (virtualInv != null) {
+            return virtualInv;
+        }
+        return playerInventories.computeIfAbsent(player.getUniqueId(), 
+                id -> new VirtualInventory(player.getName() + "'s NusaWEdit Materials"));
+    }
+    
+    /**
+     * Read a stored inventory
+     * @param playerId Player UUID
+     * @return Inventory, or null if it is missing or unreadable
+     */
+    private VirtualInventory readInventory(UUID playerId) {
+        try {
+            InventorySnapshot stored = store.read(playerId);
+            return stored != null ? stored.toInventory() : null;
+        } catch (IOException e) {
+            // The player starts with a new inventory, file stores keep the unreadable file aside
+            plugin.getLogger().warning("Failed to load inventory: " + playerId);
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
     /**
      * Update inventory expiry time for a player
      * @param playerId Player UUID
      */
-    private void updateExpiryTime(UUID playerId) {
+    void updateExpiryTime(UUID playerId) {
         int cleanupHours = plugin.getConfigManager().getInventoryCleanupHours();
         long expiryTime = System.currentTimeMillis() + (cleanupHours * 60 * 60 * 1000);
         inventoryExpiryTimes.put(playerId, expiryTime);
+        scheduleExpiry(playerId, expiryTime);
+        indexDirty.set(true);
+        
+        // The expiry time is saved with the inventory
+        VirtualInventory virtualInv = playerInventories.get(playerId);
+        if (virtualInv != null) {
+            virtualInv.markDirty();
+        }
+        scheduleSave();
+    }
+    
+    /**
+     * Schedule a save of the changed inventories, unless one is pending
+     */
+    private void scheduleSave() {
+        // Nothing can be scheduled while disabling, the final save covers it
+        if (!plugin.isEnabled() || !saveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        
+        long delay = plugin.getConfigManager().getInventorySaveDelaySeconds() * 20L;
+        saveTask = Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            saveScheduled.set(false);
+            saveInventories();
+        }, delay);
     }
     
     /**
@@ -135,14 +335,14 @@ public class VirtualInventoryManager {
      * @param amount Amount to add
      * @return true if added successfully
      */
-    public boolean addMaterial(Player player, Material material, int amount) {
+    public boolean addMaterial(Player player, Material material, long amount) {
         UUID playerId = player.getUniqueId();
-        VirtualInventory virtualInv = playerInventories.computeIfAbsent(playerId, 
-                id -> new VirtualInventory(player.getName() + "'s NusaWEdit Materials"));
+        VirtualInventory virtualInv = getOrCreateInventory(player);
         
-        boolean result = virtualInv.addItem(new ItemStack(material, amount));
+        // The ledger has no slot limit, so adding always succeeds
+        virtualInv.addMaterial(material, amount);
         updateExpiryTime(playerId);
-        return result;
+        return true;
     }
     
     /**
@@ -152,12 +352,12 @@ public class VirtualInventoryManager {
      * @param amount Amount needed
      * @return true if player has enough
      */
-    public boolean hasMaterial(Player player, Material material, int amount) {
-        VirtualInventory virtualInv = playerInventories.get(player.getUniqueId());
+    public boolean hasMaterial(Player player, Material material, long amount) {
+        VirtualInventory virtualInv = getInventory(player.getUniqueId());
         if (virtualInv == null) {
             return false;
         }
-        return virtualInv.countMaterial(material) >= amount;
+        return virtualInv.hasMaterial(material, amount);
     }
     
     /**
@@ -167,8 +367,8 @@ public class VirtualInventoryManager {
      * @param amount Amount to remove
      * @return true if removed successfully
      */
-    public boolean removeMaterial(Player player, Material material, int amount) {
-        VirtualInventory virtualInv = playerInventories.get(player.getUniqueId());
+    public boolean removeMaterial(Player player, Material material, long amount) {
+        VirtualInventory virtualInv = getInventory(player.getUniqueId());
         if (virtualInv == null) {
             return false;
         }
@@ -179,118 +379,263 @@ public class VirtualInventoryManager {
     }
     
     /**
-     * Load all virtual inventories from disk
+     * Reserve materials for a block operation, all or nothing
+     * @param player Player
+     * @param amounts Amount of each material to reserve
+     * @return Reservation, or null if the player does not have enough of every material
      */
-    @SuppressWarnings("unchecked")
-    private void loadInventories() {
-        File dataFolder = new File(plugin.getDataFolder(), "inventories");
-        if (!dataFolder.exists()) {
-            dataFolder.mkdirs();
-            return;
+    public MaterialReservation reserve(Player player, Map<Material, Long> amounts) {
+        VirtualInventory virtualInv = getInventory(player.getUniqueId());
+        if (virtualInv == null) {
+            return null;
         }
         
-        File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(".yml"));
-        if (files == null) return;
-        
-        for (File file : files) {
-            try {
-                String fileName = file.getName();
-                UUID playerId = UUID.fromString(fileName.substring(0, fileName.length() - 4));
-                
-                FileConfiguration config = YamlConfiguration.loadConfiguration(file);
-                
-                // Load inventory contents
-                VirtualInventory virtualInv = new VirtualInventory(config.getString("name", "NusaWEdit Materials"));
-                if (config.contains("contents")) {
-                    Object contentsObj = config.get("contents");
-                    Map<String, Object> serializedItems;
-                    
-                    if (contentsObj instanceof org.bukkit.configuration.MemorySection) {
-                        // Convert MemorySection to Map
-                        org.bukkit.configuration.MemorySection section = 
-                                (org.bukkit.configuration.MemorySection) contentsObj;
-                        serializedItems = new HashMap<>();
-                        for (String key : section.getKeys(false)) {
-                            serializedItems.put(key, section.get(key));
-                        }
-                    } else if (contentsObj instanceof Map) {
-                        // Direct cast if it's already a Map
-                        serializedItems = (Map<String, Object>) contentsObj;
-                    } else {
-                        // Skip if it's neither
-                        plugin.getLogger().warning("Invalid contents format in inventory: " + file.getName());
-                        continue;
-                    }
-                    
-                    virtualInv.loadFromSerialized(serializedItems);
+        synchronized (virtualInv) {
+            for (Map.Entry<Material, Long> entry : amounts.entrySet()) {
+                if (!virtualInv.hasMaterial(entry.getKey(), entry.getValue())) {
+                    return null;
                 }
-                
-                // Load expiry time
-                long expiryTime = config.getLong("expiry-time", System.currentTimeMillis() + (24 * 60 * 60 * 1000));
-                
-                playerInventories.put(playerId, virtualInv);
-                inventoryExpiryTimes.put(playerId, expiryTime);
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to load inventory: " + file.getName());
-                e.printStackTrace();
+            }
+            for (Map.Entry<Material, Long> entry : amounts.entrySet()) {
+                virtualInv.reserve(entry.getKey(), entry.getValue());
             }
         }
+        return new MaterialReservation(this, player.getUniqueId(), virtualInv, amounts);
+    }
+    
+    /**
+     * Reserve one material for a block operation
+     * @param player Player
+     * @param material Material type
+     * @param amount Amount to reserve
+     * @return Reservation, or null if the player does not have enough
+     */
+    public MaterialReservation reserve(Player player, Material material, long amount) {
+        return reserve(player, Collections.singletonMap(material, amount));
     }
     
     /**
-     * Save all virtual inventories to disk
+     * Save the inventories that changed since their last save to disk, must be called on the main thread
      */
     public void saveInventories() {
-        File dataFolder = new File(plugin.getDataFolder(), "inventories");
-        if (!dataFolder.exists()) {
-            dataFolder.mkdirs();
+        writer.execute(captureChanges());
+    }
+    
+    /**
+     * Copy the changed inventories, the expensive part is left to the returned write
+     * @return Write of the copies, safe to run on any thread
+     */
+    private Runnable captureChanges() {
+        // Expired inventories are deleted, unless the player got a new one since
+        List<UUID> deleted = new ArrayList<>();
+        for (UUID playerId : deletedInventories) {
+            deletedInventories.remove(playerId);
+            if (!playerInventories.containsKey(playerId)) {
+                deleted.add(playerId);
+            }
         }
         
-        // Save each player's inventory
+        List<InventorySnapshot> snapshots = new ArrayList<>();
         for (Map.Entry<UUID, VirtualInventory> entry : playerInventories.entrySet()) {
-            UUID playerId = entry.getKey();
-            VirtualInventory virtualInv = entry.getValue();
-            
-            File file = new File(dataFolder, playerId.toString() + ".yml");
-            FileConfiguration config = new YamlConfiguration();
-            
-            // Save basic info
-            config.set("name", virtualInv.getTitle());
-            
-            // Save contents
-            config.set("contents", virtualInv.serializeContents());
+            if (entry.getValue().isDirty()) {
+                long expiryTime = inventoryExpiryTimes.getOrDefault(entry.getKey(), 
+                        System.currentTimeMillis() + (24 * 60 * 60 * 1000));
+                snapshots.add(new InventorySnapshot(entry.getKey(), entry.getValue(), expiryTime));
+            }
+        }
+        
+        // Players who got or lost an inventory, or whose expiry time moved
+        Map<UUID, Long> index = indexDirty.getAndSet(false) ? new HashMap<>(inventoryExpiryTimes) : null;
+        
+        return () -> writeSnapshots(index, deleted, snapshots);
+    }
+    
+    /**
+     * Write inventory copies to disk
+     * @param index Copy of the expiry index, null if it did not change
+     * @param deleted Players whose inventory files are deleted
+     * @param snapshots Inventory copies to write
+     */
+    private void writeSnapshots(Map<UUID, Long> index, List<UUID> deleted, List<InventorySnapshot> snapshots) {
+        try {
+            store.write(index, deleted, snapshots);
+        } catch (IOException e) {
+            // Retried with the next save, the snapshots are still dirty
+            if (index != null) {
+                indexDirty.set(true);
+            }
+            deletedInventories.addAll(deleted);
+            plugin.getLogger().warning("Failed to save virtual inventories: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        // Inventories of players who left can go now that they are no longer dirty
+        if (!pendingEviction.isEmpty() && plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, this::evictIdleInventories);
+        }
+    }
+    
+    /**
+     * Export every virtual inventory as YAML, must be called on the main thread
+     * @param onComplete Called on the main thread with the number of exported inventories
+     * @return Folder the files are written to
+     */
+    public File exportToYaml(Consumer<Integer> onComplete) {
+        File exportFolder = new File(plugin.getDataFolder(), "inventories-export");
+        List<InventorySnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<UUID, VirtualInventory> entry : playerInventories.entrySet()) {
+            long expiryTime = inventoryExpiryTimes.getOrDefault(entry.getKey(), 
+                    System.currentTimeMillis() + (24 * 60 * 60 * 1000));
+            snapshots.add(new InventorySnapshot(entry.getKey(), entry.getValue(), expiryTime));
+        }
+        
+        // Inventories not in memory are read from disk by the writer
+        List<UUID> stored = new ArrayList<>();
+        for (UUID playerId : inventoryExpiryTimes.keySet()) {
+            if (!playerInventories.containsKey(playerId)) {
+                stored.add(playerId);
+            }
+        }
+        
+        // Runs after any pending save, on the same writer
+        writer.execute(() -> {
+            exportFolder.mkdirs();
+            for (UUID playerId : stored) {
+                try {
+                    InventorySnapshot snapshot = store.read(playerId);
+                    if (snapshot != null) {
+                        snapshots.add(snapshot);
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to read inventory for export: " + playerId);
+                }
+            }
             
-            // Save expiry time
-            config.set("expiry-time", inventoryExpiryTimes.getOrDefault(playerId, 
-                    System.currentTimeMillis() + (24 * 60 * 60 * 1000)));
+            int exported = 0;
+            for (InventorySnapshot snapshot : snapshots) {
+                try {
+                    InventoryStorage.writeYaml(new File(exportFolder, 
+                            snapshot.getPlayerId().toString() + InventoryStorage.YAML_EXTENSION), snapshot);
+                    exported++;
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to export inventory: " + snapshot.getPlayerId());
+                    e.printStackTrace();
+                }
+            }
             
+            int total = exported;
+            Bukkit.getScheduler().runTask(plugin, () -> onComplete.accept(total));
+        });
+        return exportFolder;
+    }
+    
+    /**
+     * Copy the inventories of another store into the active one, must be called on the main thread
+     *
+     * Players who already have an inventory in the active store keep it. Inventories
+     * created while the copy runs get the copied materials added to them.
+     * @param sourceType Store to copy from, "file" or "sqlite"
+     * @param onComplete Called on the main thread with the number of copied inventories
+     * @return false if the source is the active store
+     */
+    public boolean migrateFrom(String sourceType, Consumer<Integer> onComplete) {
+        if (sourceType.equalsIgnoreCase(storeType)) {
+            return false;
+        }
+        
+        InventoryStore source = createStore(sourceType);
+        Map<UUID, Long> index = new HashMap<>(inventoryExpiryTimes);
+        
+        // Runs after any pending save, on the same writer
+        writer.execute(() -> {
+            List<InventorySnapshot> migrated = new ArrayList<>();
             try {
-                config.save(file);
+                List<InventorySnapshot> pending = new ArrayList<>();
+                for (UUID playerId : source.open().keySet()) {
+                    if (index.containsKey(playerId)) {
+                        continue;
+                    }
+                    InventorySnapshot snapshot = source.read(playerId);
+                    if (snapshot != null) {
+                        pending.add(snapshot);
+                        index.put(playerId, snapshot.getExpiryTime());
+                    }
+                }
+                
+                // Written in groups, each one a single commit
+                for (int i = 0; i < pending.size(); i += MIGRATION_GROUP_SIZE) {
+                    List<InventorySnapshot> group = pending.subList(i, Math.min(i + MIGRATION_GROUP_SIZE, pending.size()));
+                    store.write(index, new ArrayList<>(), group);
+                    migrated.addAll(group);
+                }
             } catch (IOException e) {
-                plugin.getLogger().warning("Failed to save inventory: " + playerId);
+                plugin.getLogger().warning("Failed to migrate virtual inventories: " + e.getMessage());
                 e.printStackTrace();
+            } finally {
+                source.close();
             }
-        }
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (InventorySnapshot snapshot : migrated) {
+                    UUID playerId = snapshot.getPlayerId();
+                    if (inventoryExpiryTimes.putIfAbsent(playerId, snapshot.getExpiryTime()) == null) {
+                        scheduleExpiry(playerId, snapshot.getExpiryTime());
+                    }
+                    
+                    // Created after the copy started, so the copied materials were not in it yet
+                    VirtualInventory virtualInv = playerInventories.get(playerId);
+                    if (virtualInv != null) {
+                        for (Map.Entry<Material, Long> entry : snapshot.getContents().entrySet()) {
+                            virtualInv.addMaterial(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                indexDirty.set(true);
+                scheduleSave();
+                onComplete.accept(migrated.size());
+            });
+        });
+        return true;
     }
     
     /**
      * Save all inventories on plugin disable
      */
     public void saveAllInventories() {
-        cleanupTask.cancel();
-        warningTask.cancel();
+        stopTasks();
+        if (saveTask != null) {
+            saveTask.cancel();
+        }
+        
+        // Closing an open view moves its contents back into the ledger
+        for (VirtualInventory virtualInv : playerInventories.values()) {
+            Inventory view = virtualInv.getView();
+            if (view != null) {
+                for (HumanEntity viewer : new ArrayList<>(view.getViewers())) {
+                    viewer.closeInventory();
+                }
+            }
+        }
+        
+        // Only what changed since the last save is left to write, wait for the writer to finish
         saveInventories();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for virtual inventories to be saved");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.close();
     }
 
     /**
-     * Stop the inventory cleanup and warning tasks
+     * Stop the inventory expiry task
      */
     public void stopTasks() {
-        if (cleanupTask != null) {
-            cleanupTask.cancel();
-        }
-        if (warningTask != null) {
-            warningTask.cancel();
+        if (expiryTask != null) {
+            expiryTask.cancel();
         }
     }
 }
\ No newline at end of file
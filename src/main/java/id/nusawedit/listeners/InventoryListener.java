@@ -0,0 +1,43 @@
+package id.nusawedit.listeners;
+
+import id.nusawedit.Plugin;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Listener for the virtual inventory view and for loading inventories around logins
+ */
+public class InventoryListener implements Listener {
+    private final Plugin plugin;
+    
+    public InventoryListener(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            // Read the inventory from disk here, off the main thread, before the player joins
+            plugin.getInventoryManager().preloadInventory(event.getUniqueId());
+        }
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getInventoryManager().unloadInventory(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) {
+        if (event.getPlayer() instanceof Player) {
+            // Sync what is left in the view back into the material ledger
+            plugin.getInventoryManager().handleViewClosed((Player) event.getPlayer(), event.getInventory());
+        }
+    }
+}
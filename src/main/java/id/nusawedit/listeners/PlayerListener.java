@@ -0,0 +1,36 @@
+package id.nusawedit.listeners;
+
+import id.nusawedit.Plugin;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Listener for player session events
+ */
+public class PlayerListener implements Listener {
+    private final Plugin plugin;
+    
+    public PlayerListener(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // Drop the preview and selection so derived state is released
+        plugin.getVisualizationManager().cancelPreview(event.getPlayer());
+        plugin.getSelectionManager().clearSelection(event.getPlayer());
+        plugin.getVisualizationManager().removePlayer(event.getPlayer());
+        plugin.getBlockOperationHandler().removePlayer(event.getPlayer());
+    }
+    
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        // A preview only makes sense while standing next to it
+        if (plugin.getVisualizationManager().cancelPreview(event.getPlayer())) {
+            event.getPlayer().sendMessage(plugin.getMessageManager().getMessage("preview.world-changed"));
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package id.nusawedit.operations;
 
 import id.nusawedit.Plugin;
+import id.nusawedit.inventory.MaterialReservation;
 import id.nusawedit.selection.Selection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -13,6 +15,7 @@ import java.util.concurrent.CompletableFuture;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Player;
@@ -35,22 +38,63 @@ public class AsyncBlockOperationHandler {
     // Track active operations
     private final Map<UUID, BukkitTask> activeOperations = new HashMap<>();
     
+    // Materials reserved by active operations
+    private final Map<UUID, MaterialReservation> activeReservations = new HashMap<>();
+    
+    // Running area rollbacks, which cannot be cancelled
+    private final Map<UUID, RollbackTask> activeRollbacks = new HashMap<>();
+    
     public AsyncBlockOperationHandler(Plugin plugin, BlockOperationHandler standardHandler) {
         this.plugin = plugin;
         this.standardHandler = standardHandler;
     }
     
     /**
-     * Cancel any pending operations for a player
+     * Cancel any pending operations for a player, rollbacks keep running
+     * @param player Player
+     * @return true if an operation was cancelled
+     */
+    public boolean cancelOperations(Player player) {
+        if (finishOperation(player.getUniqueId())) {
+            player.sendMessage(plugin.getMessageManager().getMessage("cancel.all-cancelled"));
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Check if player is running an area rollback
      * @param player Player
+     * @return true if a rollback is running
+     */
+    public boolean isRollingBack(Player player) {
+        return activeRollbacks.containsKey(player.getUniqueId());
+    }
+    
+    /**
+     * Restore the remaining blocks of every running rollback at once, e.g. on shutdown
+     */
+    public void finishRollbacks() {
+        for (RollbackTask rollback : new ArrayList<>(activeRollbacks.values())) {
+            rollback.restore(Integer.MAX_VALUE);
+        }
+    }
+    
+    /**
+     * Stop a player's operation and return the materials it did not use
+     * @param playerId Player UUID
+     * @return true if an operation was running
      */
-    public void cancelOperations(Player player) {
-        UUID playerId = player.getUniqueId();
+    private boolean finishOperation(UUID playerId) {
         BukkitTask task = activeOperations.remove(playerId);
         if (task != null) {
             task.cancel();
-            player.sendMessage(plugin.getMessageManager().getMessage("cancel.all-cancelled"));
         }
+        MaterialReservation reservation = activeReservations.remove(playerId);
+        if (reservation != null) {
+            reservation.release();
+        }
+        return task != null;
     }
     
     /**
@@ -59,7 +103,7 @@ public class AsyncBlockOperationHandler {
      * @return true if player has an active operation
      */
     public boolean hasActiveOperation(Player player) {
-        return activeOperations.containsKey(player.getUniqueId());
+        return activeOperations.containsKey(player.getUniqueId()) || activeRollbacks.containsKey(player.getUniqueId());
     }
     
     /**
@@ -81,69 +125,106 @@ public class AsyncBlockOperationHandler {
         }
         
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection.getVolume();
-        
-        // Create result future
-        CompletableFuture<Boolean> result = new CompletableFuture<>();
-        
-        // Create list of blocks to process
-        List<Location> blocksToProcess = new ArrayList<>();
         
         // Collect blocks to process (done synchronously for now)
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Skip blacklisted blocks
-                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        continue;
-                    }
-                    
-                    blocksToProcess.add(block.getLocation());
-                }
-            }
+        List<Location> blocks = collectBlocks(selection);
+        return startSetOperation(player, material, blocks.iterator(), blocks.size());
+    }
+    
+    /**
+     * Set the given blocks to a specific material with batched processing
+     * @param player Player
+     * @param material Material to set
+     * @param blocksToProcess Blocks to set, e.g. from a confirmed preview, read one batch at a time
+     * @param count Number of blocks
+     * @return CompletableFuture that completes when operation is done
+     */
+    public CompletableFuture<Boolean> setBlocksAsync(Player player, Material material,
+                                                     Iterator<Location> blocksToProcess, int count) {
+        // Check for existing operations
+        if (hasActiveOperation(player)) {
+            player.sendMessage(plugin.getMessageManager().getMessage("async.operation-in-progress"));
+            return CompletableFuture.completedFuture(false);
         }
         
+        // Run preliminary checks synchronously
+        if (!standardHandler.canPerformOperation(player, material, count)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        return startSetOperation(player, material, blocksToProcess, count);
+    }
+    
+    /**
+     * Check materials and start setting blocks in batches
+     * @param player Player
+     * @param material Material to set
+     * @param blocksToProcess Blocks to set
+     * @param totalBlocks Number of blocks
+     * @return CompletableFuture that completes when operation is done
+     */
+    private CompletableFuture<Boolean> startSetOperation(Player player, Material material,
+                                                         Iterator<Location> blocksToProcess, int totalBlocks) {
+        // Create result future
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        
         // Check if there are blocks to process
-        if (blocksToProcess.isEmpty()) {
+        if (totalBlocks == 0) {
             player.sendMessage(plugin.getMessageManager().getMessage("operations.no-applicable-blocks"));
             return CompletableFuture.completedFuture(false);
         }
         
-        // Check if player has enough materials
-        int totalBlocks = blocksToProcess.size();
-        if (!plugin.getInventoryManager().hasMaterial(player, material, totalBlocks)) {
+        // Reserve the materials; each batch only takes what it placed
+        MaterialReservation reservation = plugin.getInventoryManager().reserve(player, material, totalBlocks);
+        if (reservation == null) {
             player.sendMessage(plugin.getMessageManager().getFormattedMessage(
                 "operations.not-enough-materials", totalBlocks, formatMaterial(material)));
             return CompletableFuture.completedFuture(false);
         }
+        activeReservations.put(player.getUniqueId(), reservation);
         
         // Create undo operation
         UndoOperation undoOp = new UndoOperation(player.getUniqueId());
         
-        // Remove materials from player's inventory before starting
-        plugin.getInventoryManager().removeMaterial(player, material, totalBlocks);
-        
         // Start progress message
         player.sendMessage(plugin.getMessageManager().getMessage("async.operation-starting"));
         player.sendMessage(plugin.getMessageManager().getMessage("async.operation-may-take-time"));
         
         // Process blocks in batches
-        processBatchedSetOperation(player, blocksToProcess, material, undoOp, 0, totalBlocks, result);
+        processBatchedSetOperation(player, blocksToProcess, material, reservation, undoOp, 0, totalBlocks, result);
         
         return result;
     }
     
+    /**
+     * Collect the non-blacklisted blocks of a selection
+     * @param selection Complete selection
+     * @return Block locations
+     */
+    private List<Location> collectBlocks(Selection selection) {
+        World world = selection.getWorld();
+        List<Location> blocks = new ArrayList<>();
+        selection.getRegion().forEachBlock((x, y, z) -> {
+            Block block = world.getBlockAt(x, y, z);
+            
+            // Skip blacklisted blocks
+            if (!plugin.getConfigManager().isBlacklisted(block.getType())) {
+                blocks.add(block.getLocation());
+            }
+        });
+        return blocks;
+    }
+    
     /**
      * Process blocks in batches for set operation
      */
-    private void processBatchedSetOperation(Player player, List<Location> blocks, Material material, 
-                                       UndoOperation undoOp, int processed, int total, 
+    private void processBatchedSetOperation(Player player, Iterator<Location> blocks, Material material, 
+                                       MaterialReservation reservation, UndoOperation undoOp, int processed, int total, 
                                        CompletableFuture<Boolean> result) {
     
     final int[] currentIndex = {processed};
     final int[] lastReportedPercentage = {0}; // Track last reported percentage
+    final int[] skipped = {0}; // Blocks that became blacklisted after they were collected
     
     // Start batch processing task
     BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
@@ -152,20 +233,29 @@ public class AsyncBlockOperationHandler {
             int batchCount = 0;
             
             // Process a batch of blocks
-            while (currentIndex[0] < blocks.size() && batchCount < BATCH_SIZE) {
-                Location loc = blocks.get(currentIndex[0]);
+            while (blocks.hasNext() && batchCount < BATCH_SIZE) {
+                Location loc = blocks.next();
                 Block block = loc.getBlock();
+                currentIndex[0]++;
+                batchCount++;
+                
+                // Double-check the blacklist (the block might have changed)
+                if (plugin.getConfigManager().isBlacklisted(block.getType()) || !reservation.use(material)) {
+                    skipped[0]++;
+                    continue;
+                }
                 
                 // Store original block for undo
-                undoOp.addBlock(loc, block.getBlockData());
+                undoOp.addBlock(loc, block.getBlockData(), material);
                 
                 // Set the new block
-                block.setType(material, false); // false = don't apply physics
-                
-                currentIndex[0]++;
-                batchCount++;
+                block.setBlockData(BlockDataPool.of(material), false); // false = don't apply physics
+                standardHandler.markChanged(block);
             }
             
+            // Take what this batch placed from the reservation
+            reservation.commit();
+            
             // Report progress at specified intervals
             int currentPercentage = (int) ((double) currentIndex[0] / total * 100);
             if (currentPercentage - lastReportedPercentage[0] >= 5) {
@@ -175,16 +265,16 @@ public class AsyncBlockOperationHandler {
             }
             
             // Check if done
-            if (currentIndex[0] >= blocks.size()) {
-                // Cancel task
-                Bukkit.getScheduler().cancelTask(activeOperations.remove(player.getUniqueId()).getTaskId());
+            if (!blocks.hasNext()) {
+                // Cancel task and return the materials reserved for skipped blocks
+                finishOperation(player.getUniqueId());
                 
                 // Add undo operation to history
                 standardHandler.addUndoOperation(player, undoOp);
                 
                 // Notify player
                 player.sendMessage(plugin.getMessageManager().getFormattedMessage(
-                    "operations.set-success", total, formatMaterial(material)));
+                    "operations.set-success", total - skipped[0], formatMaterial(material)));
                 
                 // Complete future
                 result.complete(true);
@@ -221,91 +311,109 @@ public class AsyncBlockOperationHandler {
         // First, scan to find blocks to replace
         CompletableFuture<List<Location>> scanResult = new CompletableFuture<>();
         
-        // Start scan task asynchronously
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+        // Scan on the next tick; block types can only be read on the main thread
+        Bukkit.getScheduler().runTask(plugin, () -> {
             List<Location> blocksToReplace = new ArrayList<>();
-            
-            // Count blocks to be replaced
-            for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-                for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                    for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                        // Need to switch to sync for checking block types
-                        int finalX = x;
-                        int finalY = y;
-                        int finalZ = z;
-                        
-                        // Queue block check
-                        Bukkit.getScheduler().runTask(plugin, () -> {
-                            Block block = selection.getWorld().getBlockAt(finalX, finalY, finalZ);
-                            if (block.getType() == fromMaterial && !plugin.getConfigManager().isBlacklisted(block.getType())) {
-                                blocksToReplace.add(block.getLocation());
-                            }
-                        });
+            if (!plugin.getConfigManager().isBlacklisted(fromMaterial)) {
+                World world = selection.getWorld();
+                selection.getRegion().forEachBlock((x, y, z) -> {
+                    Block block = world.getBlockAt(x, y, z);
+                    if (block.getType() == fromMaterial) {
+                        blocksToReplace.add(block.getLocation());
                     }
-                }
+                });
             }
-            
-            // Continue after all blocks are checked
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                scanResult.complete(blocksToReplace);
-            }, 5L); // Wait a bit to ensure all checks are processed
+            scanResult.complete(blocksToReplace);
         });
         
         // Process result of scan
         CompletableFuture<Boolean> result = new CompletableFuture<>();
         
         scanResult.thenAccept(blocksToReplace -> {
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                // Check if any blocks found
-                if (blocksToReplace.isEmpty()) {
-                    player.sendMessage("§cNo blocks of type §6" + formatMaterial(fromMaterial) + " §cfound in the selection.");
-                    result.complete(false);
-                    return;
-                }
-                
-                int toReplace = blocksToReplace.size();
-                
-                // Check if player has permission for this many blocks
-                String rank = standardHandler.getRank(player);
-                int blockLimit = plugin.getConfigManager().getRankBlockLimit(rank);
-                
-                if (toReplace > blockLimit) {
-                    player.sendMessage("§cToo many blocks to replace! Maximum: §6" + blockLimit + " blocks§c, Selected: §6" + toReplace + " blocks");
-                    result.complete(false);
-                    return;
-                }
-                
-                // Check if player has enough materials
-                if (!plugin.getInventoryManager().hasMaterial(player, toMaterial, toReplace)) {
-                    player.sendMessage("§cYou don't have enough materials! You need §6" + toReplace + " " + formatMaterial(toMaterial) + "§c!");
-                    result.complete(false);
-                    return;
-                }
-                
-                // Create undo operation
-                UndoOperation undoOp = new UndoOperation(player.getUniqueId());
-                
-                // Remove new materials from player's inventory
-                plugin.getInventoryManager().removeMaterial(player, toMaterial, toReplace);
-                
-                // Start progress message
-                player.sendMessage("§aBeginning replace operation. Please wait...");
-                player.sendMessage("§7This may take a moment for large selections.");
-                
-                // Process blocks in batches
-                processBatchedReplaceOperation(player, blocksToReplace, fromMaterial, toMaterial, undoOp, 0, toReplace, result);
-            });
+            Bukkit.getScheduler().runTask(plugin, () -> startReplaceOperation(player, fromMaterial, toMaterial,
+                    blocksToReplace.iterator(), blocksToReplace.size(), result));
         });
         
         return result;
     }
     
+    /**
+     * Replace the given blocks with another material asynchronously
+     * @param player Player
+     * @param fromMaterial Material to replace
+     * @param toMaterial Material to replace with
+     * @param blocksToReplace Blocks to replace, e.g. from a confirmed preview, read one batch at a time
+     * @param count Number of blocks
+     * @return CompletableFuture that completes when operation is done
+     */
+    public CompletableFuture<Boolean> replaceBlocksAsync(Player player, Material fromMaterial, Material toMaterial,
+                                                         Iterator<Location> blocksToReplace, int count) {
+        // Check for existing operations
+        if (hasActiveOperation(player)) {
+            player.sendMessage("§cYou already have an operation in progress. Please wait or use /nwe cancel.");
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        startReplaceOperation(player, fromMaterial, toMaterial, blocksToReplace, count, result);
+        return result;
+    }
+    
+    /**
+     * Check limits and materials and start replacing blocks in batches
+     * @param player Player
+     * @param fromMaterial Material to replace
+     * @param toMaterial Material to replace with
+     * @param blocksToReplace Blocks to replace
+     * @param toReplace Number of blocks
+     * @param result Future completed when operation is done
+     */
+    private void startReplaceOperation(Player player, Material fromMaterial, Material toMaterial,
+                                       Iterator<Location> blocksToReplace, int toReplace, CompletableFuture<Boolean> result) {
+        // Check if any blocks found
+        if (toReplace == 0) {
+            player.sendMessage("§cNo blocks of type §6" + formatMaterial(fromMaterial) + " §cfound in the selection.");
+            result.complete(false);
+            return;
+        }
+        
+        // Check if player has permission for this many blocks
+        String rank = standardHandler.getRank(player);
+        int blockLimit = plugin.getConfigManager().getRankBlockLimit(rank);
+        
+        if (toReplace > blockLimit) {
+            player.sendMessage("§cToo many blocks to replace! Maximum: §6" + blockLimit + " blocks§c, Selected: §6" + toReplace + " blocks");
+            result.complete(false);
+            return;
+        }
+        
+        // Reserve the new materials; each batch only takes what it replaced
+        MaterialReservation reservation = plugin.getInventoryManager().reserve(player, toMaterial, toReplace);
+        if (reservation == null) {
+            player.sendMessage("§cYou don't have enough materials! You need §6" + toReplace + " " + formatMaterial(toMaterial) + "§c!");
+            result.complete(false);
+            return;
+        }
+        activeReservations.put(player.getUniqueId(), reservation);
+        
+        // Create undo operation
+        UndoOperation undoOp = new UndoOperation(player.getUniqueId());
+        
+        // Start progress message
+        player.sendMessage("§aBeginning replace operation. Please wait...");
+        player.sendMessage("§7This may take a moment for large selections.");
+        
+        // Process blocks in batches
+        processBatchedReplaceOperation(player, blocksToReplace, fromMaterial, toMaterial, reservation, undoOp, 0, toReplace, result);
+    }
+    
     /**
      * Process blocks in batches for replace operation
      */
-    private void processBatchedReplaceOperation(Player player, List<Location> blocks, Material fromMaterial, 
-                                               Material toMaterial, UndoOperation undoOp, int processed, 
-                                               int total, CompletableFuture<Boolean> result) {
+    private void processBatchedReplaceOperation(Player player, Iterator<Location> blocks, Material fromMaterial, 
+                                               Material toMaterial, MaterialReservation reservation, 
+                                               UndoOperation undoOp, int processed, int total, 
+                                               CompletableFuture<Boolean> result) {
         
         // Start batch processing task
         BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
@@ -316,39 +424,44 @@ public class AsyncBlockOperationHandler {
             public void run() {
                 // Process a batch of blocks
                 int batchCount = 0;
+                int batchReplaced = 0;
                 
-                while (currentIndex < blocks.size() && batchCount < BATCH_SIZE) {
-                    Location location = blocks.get(currentIndex);
+                while (blocks.hasNext() && batchCount < BATCH_SIZE) {
+                    Location location = blocks.next();
                     Block block = location.getBlock();
                     
                     // Double-check block type (it might have changed)
-                    if (block.getType() == fromMaterial) {
+                    if (block.getType() == fromMaterial && reservation.use(toMaterial)) {
                         // Store block for undo
-                        undoOp.addBlock(location, block.getBlockData());
+                        undoOp.addBlock(location, block.getBlockData(), toMaterial);
                         
                         // Change the block
-                        block.setType(toMaterial);
+                        block.setBlockData(BlockDataPool.of(toMaterial));
+                        standardHandler.markChanged(block);
                         totalProcessed++;
+                        batchReplaced++;
                     }
                     
                     currentIndex++;
                     batchCount++;
                 }
                 
+                // Settle this batch, so a cancelled operation keeps what it already swapped
+                reservation.commit();
+                if (batchReplaced > 0) {
+                    plugin.getInventoryManager().addMaterial(player, fromMaterial, batchReplaced);
+                }
+                
                 // Send progress update every 10% or at the end
-                int progressPercent = (currentIndex * 100) / blocks.size();
-                if (progressPercent % 10 == 0 || currentIndex == blocks.size()) {
-                    player.sendMessage("§7Progress: §e" + progressPercent + "% §7(§e" + currentIndex + "§7/§e" + blocks.size() + "§7 blocks)");
+                int progressPercent = (int) ((long) currentIndex * 100 / total);
+                if (progressPercent % 10 == 0 || !blocks.hasNext()) {
+                    player.sendMessage("§7Progress: §e" + progressPercent + "% §7(§e" + currentIndex + "§7/§e" + total + "§7 blocks)");
                 }
                 
                 // Check if we're done
-                if (currentIndex >= blocks.size()) {
-                    // Clean up and complete
-                    activeOperations.remove(player.getUniqueId());
-                    ((BukkitTask) activeOperations.get(player.getUniqueId())).cancel();
-                    
-                    // Add old materials to player's inventory
-                    plugin.getInventoryManager().addMaterial(player, fromMaterial, totalProcessed);
+                if (!blocks.hasNext()) {
+                    // Clean up and return the materials reserved for blocks that changed
+                    finishOperation(player.getUniqueId());
                     
                     // Add undo operation to history
                     standardHandler.addUndoOperation(player, undoOp);
@@ -387,24 +500,8 @@ public class AsyncBlockOperationHandler {
         Selection selection = plugin.getSelectionManager().getSelection(player);
         CompletableFuture<Boolean> result = new CompletableFuture<>();
         
-        // Create list of blocks to process
-        List<Location> blocksToProcess = new ArrayList<>();
-        
         // Collect blocks to process
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Skip blacklisted blocks
-                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        continue;
-                    }
-                    
-                    blocksToProcess.add(block.getLocation());
-                }
-            }
-        }
+        List<Location> blocksToProcess = collectBlocks(selection);
         
         // Check if there are blocks to process
         if (blocksToProcess.isEmpty()) {
@@ -426,20 +523,27 @@ public class AsyncBlockOperationHandler {
             }
         }
         
-        // Create undo operation
-        UndoOperation undoOp = new UndoOperation(player.getUniqueId());
-        
-        // Remove materials from player's inventory before starting
+        // Reserve the estimates; blocks beyond them are paid for as they are placed
+        Map<Material, Long> amounts = new HashMap<>();
         for (Map.Entry<Material, Integer> entry : materialEstimates.entrySet()) {
-            plugin.getInventoryManager().removeMaterial(player, entry.getKey(), entry.getValue());
+            amounts.put(entry.getKey(), (long) entry.getValue());
+        }
+        MaterialReservation reservation = plugin.getInventoryManager().reserve(player, amounts);
+        if (reservation == null) {
+            player.sendMessage("§cYou don't have enough materials!");
+            return CompletableFuture.completedFuture(false);
         }
+        activeReservations.put(player.getUniqueId(), reservation);
+        
+        // Create undo operation
+        UndoOperation undoOp = new UndoOperation(player.getUniqueId());
         
         // Start progress message
         player.sendMessage(plugin.getMessageManager().getMessage("async.operation-starting"));
         player.sendMessage(plugin.getMessageManager().getMessage("async.operation-may-take-time"));
         
         // Process blocks in batches
-        processBatchedSetPatternOperation(player, blocksToProcess, pattern, undoOp, 0, totalBlocks, materialEstimates, result);
+        processBatchedSetPatternOperation(player, blocksToProcess, pattern, reservation, undoOp, 0, totalBlocks, result);
         
         return result;
     }
@@ -448,14 +552,14 @@ public class AsyncBlockOperationHandler {
      * Process blocks in batches for set pattern operation
      */
     private void processBatchedSetPatternOperation(Player player, List<Location> blocks, BlockPattern pattern, 
-                                               UndoOperation undoOp, int processed, int total, 
-                                               Map<Material, Integer> materialEstimates, CompletableFuture<Boolean> result) {
+                                               MaterialReservation reservation, UndoOperation undoOp, 
+                                               int processed, int total, CompletableFuture<Boolean> result) {
         
         // Start batch processing task
         BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
             private int currentIndex = 0;
             private int totalProcessed = processed;
-            private final Map<Material, Integer> materialsUsed = new HashMap<>();
+            private int placed = 0;
             
             @Override
             public void run() {
@@ -466,23 +570,28 @@ public class AsyncBlockOperationHandler {
                     Location location = blocks.get(currentIndex);
                     Block block = location.getBlock();
                     
-                    // Store block for undo
-                    undoOp.addBlock(location, block.getBlockData());
-                    
                     // Get random material from pattern
                     Material material = pattern.getRandomMaterial();
                     
-                    // Change the block
-                    block.setType(material);
-                    
-                    // Count the material used
-                    materialsUsed.put(material, materialsUsed.getOrDefault(material, 0) + 1);
+                    // Skip blocks that became blacklisted or that the player cannot pay for
+                    if (!plugin.getConfigManager().isBlacklisted(block.getType()) && reservation.use(material)) {
+                        // Store block for undo
+                        undoOp.addBlock(location, block.getBlockData(), material);
+                        
+                        // Change the block
+                        block.setBlockData(BlockDataPool.of(material));
+                        standardHandler.markChanged(block);
+                        placed++;
+                    }
                     
                     currentIndex++;
                     totalProcessed++;
                     batchCount++;
                 }
                 
+                // Take what this batch placed from the reservation
+                reservation.commit();
+                
                 // Send progress update every 10% or at the end
                 int progressPercent = (totalProcessed * 100) / total;
                 if (progressPercent % 10 == 0 || totalProcessed == total) {
@@ -491,27 +600,18 @@ public class AsyncBlockOperationHandler {
                 
                 // Check if we're done
                 if (currentIndex >= blocks.size()) {
-                    // Clean up and complete
-                    activeOperations.remove(player.getUniqueId());
-                    ((BukkitTask) activeOperations.get(player.getUniqueId())).cancel();
+                    // Clean up and return any unused materials
+                    finishOperation(player.getUniqueId());
                     
                     // Add undo operation to history
                     standardHandler.addUndoOperation(player, undoOp);
                     
-                    // Return any unused materials
-                    for (Map.Entry<Material, Integer> entry : materialEstimates.entrySet()) {
-                        int returned = entry.getValue() - materialsUsed.getOrDefault(entry.getKey(), 0);
-                        if (returned > 0) {
-                            plugin.getInventoryManager().addMaterial(player, entry.getKey(), returned);
-                        }
-                    }
-                    
                     // Complete the future
                     if (pattern.size() == 1) {
-                        player.sendMessage("§aOperation complete! Changed §6" + total + " blocks §ato §6" + 
+                        player.sendMessage("§aOperation complete! Changed §6" + placed + " blocks §ato §6" + 
                                 formatMaterial(pattern.getMaterials().get(0)) + "§a!");
                     } else {
-                        player.sendMessage("§aOperation complete! Changed §6" + total + " blocks §ato mixed materials!");
+                        player.sendMessage("§aOperation complete! Changed §6" + placed + " blocks §ato mixed materials!");
                     }
                     result.complete(true);
                 }
@@ -522,6 +622,84 @@ public class AsyncBlockOperationHandler {
         activeOperations.put(player.getUniqueId(), task);
     }
     
+    /**
+     * Restore blocks to recorded states in batches, used for area rollbacks
+     * @param player Player running the rollback
+     * @param restores Block states to restore
+     * @param operationCount Number of operations being rolled back
+     * @return CompletableFuture that completes when the rollback is done
+     */
+    public CompletableFuture<Boolean> rollbackAsync(Player player, Map<Location, BlockData> restores, int operationCount) {
+        player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+            "rollback.starting", operationCount, restores.size()));
+        
+        RollbackTask rollback = new RollbackTask(player, restores, operationCount);
+        rollback.task = Bukkit.getScheduler().runTaskTimer(plugin, rollback, 0L, BATCH_DELAY);
+        activeRollbacks.put(player.getUniqueId(), rollback);
+        return rollback.result;
+    }
+    
+    /**
+     * Restores the blocks of an area rollback in batches. The undo records of the
+     * restored blocks are only trimmed once every block is back, so a rollback is
+     * never cancelled and finishes at once on shutdown instead.
+     */
+    private class RollbackTask implements Runnable {
+        private final Player player;
+        private final List<Map.Entry<Location, BlockData>> entries;
+        private final int operationCount;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private BukkitTask task;
+        private int currentIndex = 0;
+        private int lastReportedPercentage = 0;
+        
+        RollbackTask(Player player, Map<Location, BlockData> restores, int operationCount) {
+            this.player = player;
+            this.entries = new ArrayList<>(restores.entrySet());
+            this.operationCount = operationCount;
+        }
+        
+        @Override
+        public void run() {
+            restore(BATCH_SIZE);
+        }
+        
+        /**
+         * Restore the next blocks, completing the rollback after the last one
+         * @param limit Most blocks to restore
+         */
+        void restore(int limit) {
+            int total = entries.size();
+            int batchCount = 0;
+            
+            while (currentIndex < total && batchCount < limit) {
+                Map.Entry<Location, BlockData> entry = entries.get(currentIndex);
+                Block block = entry.getKey().getBlock();
+                block.setBlockData(entry.getValue(), false);
+                standardHandler.markChanged(block);
+                
+                currentIndex++;
+                batchCount++;
+            }
+            
+            int currentPercentage = total == 0 ? 100 : (int) ((double) currentIndex / total * 100);
+            if (currentPercentage - lastReportedPercentage >= 10 && currentIndex < total) {
+                player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+                    "async.operation-progress", currentPercentage));
+                lastReportedPercentage = currentPercentage;
+            }
+            
+            if (currentIndex >= total) {
+                task.cancel();
+                activeRollbacks.remove(player.getUniqueId());
+                
+                player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+                    "rollback.success", operationCount, total));
+                result.complete(true);
+            }
+        }
+    }
+    
     /**
      * Format material name for display
      * @param material Material
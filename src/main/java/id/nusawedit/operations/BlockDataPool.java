@@ -0,0 +1,109 @@
+package id.nusawedit.operations;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Process-wide interning pool for block states.
+ *
+ * {@code Block.getBlockData()} returns a fresh instance for every block, even when
+ * thousands of blocks share the same state. Undo entries, previews and the write
+ * path store the canonical instance from this pool instead, so each distinct
+ * state is held once and interned states can be compared by reference.
+ *
+ * Entries are weakly referenced and disappear once nothing uses the state.
+ * Pooled instances are shared and must never be modified.
+ */
+public final class BlockDataPool {
+    private static final Map<String, PooledData> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<BlockData> CLEARED = new ReferenceQueue<>();
+    
+    // Default state per material, held strongly since there are only as many as materials
+    private static final Map<Material, BlockData> DEFAULTS = new ConcurrentHashMap<>();
+    
+    private BlockDataPool() {
+    }
+    
+    /**
+     * Get the canonical instance of a block state
+     * @param data Block data
+     * @return Canonical instance equal to the given data
+     */
+    public static BlockData intern(BlockData data) {
+        expungeCleared();
+        
+        String key = data.getAsString();
+        while (true) {
+            PooledData pooled = POOL.get(key);
+            if (pooled != null) {
+                BlockData canonical = pooled.get();
+                if (canonical != null) {
+                    return canonical;
+                }
+                POOL.remove(key, pooled);
+            }
+            
+            if (POOL.putIfAbsent(key, new PooledData(key, data)) == null) {
+                return data;
+            }
+        }
+    }
+    
+    /**
+     * Get the canonical instance of a block state by its data string
+     * @param key Block data string
+     * @return Canonical instance
+     * @throws IllegalArgumentException if the string is not valid block data
+     */
+    public static BlockData intern(String key) {
+        PooledData pooled = POOL.get(key);
+        BlockData canonical = pooled != null ? pooled.get() : null;
+        return canonical != null ? canonical : intern(Bukkit.createBlockData(key));
+    }
+    
+    /**
+     * Get the canonical default state of a material, used when placing blocks
+     * @param material Block material
+     * @return Canonical default block data
+     */
+    public static BlockData of(Material material) {
+        return DEFAULTS.computeIfAbsent(material, m -> intern(m.createBlockData()));
+    }
+    
+    /**
+     * Get the number of distinct states currently pooled
+     * @return Pool size
+     */
+    public static int size() {
+        expungeCleared();
+        return POOL.size();
+    }
+    
+    /**
+     * Remove entries whose block data has been garbage collected
+     */
+    private static void expungeCleared() {
+        PooledData cleared;
+        while ((cleared = (PooledData) CLEARED.poll()) != null) {
+            POOL.remove(cleared.key, cleared);
+        }
+    }
+    
+    /**
+     * Weak pool entry that remembers its key for removal
+     */
+    private static class PooledData extends WeakReference<BlockData> {
+        final String key;
+        
+        PooledData(String key, BlockData data) {
+            super(data, CLEARED);
+            this.key = key;
+        }
+    }
+}
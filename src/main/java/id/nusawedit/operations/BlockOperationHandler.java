@@ -1,16 +1,24 @@
 package id.nusawedit.operations;
 
 import id.nusawedit.Plugin;
+import id.nusawedit.selection.Region;
 import id.nusawedit.selection.Selection;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Player;
@@ -24,11 +32,24 @@ public class BlockOperationHandler {
     private final int MAX_UNDO_HISTORY = 10;
     private AsyncBlockOperationHandler asyncHandler;
     
+    // Undo history on disk; a player's history is loaded on their first undo
+    private final UndoHistoryStore historyStore;
+    
+    // Players whose history is being loaded, with operations completed in the meantime
+    private final Map<UUID, List<UndoOperation>> pendingLoads = new HashMap<>();
+    
+    // Recent operations of all players, indexed by chunk for area rollbacks
+    private final RollbackIndex rollbackIndex;
+    
     public BlockOperationHandler(Plugin plugin) {
         this.plugin = plugin;
+        this.historyStore = new UndoHistoryStore(plugin, MAX_UNDO_HISTORY);
+        this.rollbackIndex = new RollbackIndex(plugin.getConfigManager().getRollbackRetentionHours() * 60L * 60 * 1000,
+                plugin.getConfigManager().getRollbackMaxIndexedBlocks());
         // Create async handler after this handler is initialized
         plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
             this.asyncHandler = new AsyncBlockOperationHandler(plugin, this);
+            rebuildRollbackIndex();
         }, 1L);
     }
     
@@ -39,6 +60,17 @@ public class BlockOperationHandler {
      * @return true if operation can be performed
      */
     public boolean canPerformOperation(Player player, Material material) {
+        return canPerformOperation(player, material, -1);
+    }
+    
+    /**
+     * Check if an operation writing a known number of blocks can be performed, e.g. a confirmed preview
+     * @param player Player
+     * @param material Target material (for inventory check)
+     * @param blockCount Number of blocks written, or -1 for the selection volume
+     * @return true if operation can be performed
+     */
+    public boolean canPerformOperation(Player player, Material material, long blockCount) {
         // Check if player has a valid selection
         if (!plugin.getSelectionManager().hasCompleteSelection(player)) {
             player.sendMessage(plugin.getMessageManager().getMessage("operations.no-selection"));
@@ -46,7 +78,9 @@ public class BlockOperationHandler {
         }
         
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection.getVolume();
+        
+        // Exact block count; blocks shared by overlapping union boxes count once
+        long volume = blockCount >= 0 ? blockCount : selection.getVolume();
         String worldName = selection.getWorld().getName();
         
         // Check if feature is enabled in this world
@@ -66,7 +100,7 @@ public class BlockOperationHandler {
         }
         
         // Check if player has enough materials
-        if (!plugin.getInventoryManager().hasMaterial(player, material, volume)) {
+        if (!plugin.getInventoryManager().hasMaterial(player, material, (int) volume)) {
             player.sendMessage(plugin.getMessageManager().getFormattedMessage(
                 "operations.not-enough-materials", volume, formatMaterial(material)));
             return false;
@@ -84,7 +118,7 @@ public class BlockOperationHandler {
     public boolean setBlocks(Player player, Material material) {
         // Use async handler for large selections
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection != null ? selection.getVolume() : 0;
+        long volume = selection != null ? selection.getVolume() : 0;
         
         // Use async handler for selections above a threshold 
         if (volume > 1000) { 
@@ -109,7 +143,7 @@ public class BlockOperationHandler {
         }
         
         // Check if player has enough materials
-        if (!plugin.getInventoryManager().hasMaterial(player, material, volume)) {
+        if (!plugin.getInventoryManager().hasMaterial(player, material, (int) volume)) {
             player.sendMessage("§cYou don't have enough materials! You need §6" + volume + " " + formatMaterial(material) + "§c!");
             return false;
         }
@@ -118,36 +152,34 @@ public class BlockOperationHandler {
         UndoOperation undoOp = new UndoOperation(player.getUniqueId());
         
         // Process the blocks
-        int affected = 0;
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Skip blacklisted blocks
-                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        continue;
-                    }
-                    
-                    // Store block for undo
-                    undoOp.addBlock(block.getLocation(), block.getBlockData());
-                    
-                    // Change the block
-                    block.setType(material);
-                    affected++;
-                }
+        World world = selection.getWorld();
+        int[] affected = {0};
+        selection.getRegion().forEachBlock((x, y, z) -> {
+            Block block = world.getBlockAt(x, y, z);
+            
+            // Skip blacklisted blocks
+            if (plugin.getConfigManager().isBlacklisted(block.getType())) {
+                return;
             }
-        }
+            
+            // Store block for undo
+            undoOp.addBlock(block.getLocation(), block.getBlockData(), material);
+            
+            // Change the block
+            block.setBlockData(BlockDataPool.of(material));
+            markChanged(block);
+            affected[0]++;
+        });
         
         // Remove materials from player's inventory
-        plugin.getInventoryManager().removeMaterial(player, material, affected);
+        plugin.getInventoryManager().removeMaterial(player, material, affected[0]);
         
         // Add undo operation to history
         addUndoOperation(player, undoOp);
         
         // Notify player
         player.sendMessage(plugin.getMessageManager().getFormattedMessage(
-            "operations.set-success", affected, formatMaterial(material)));
+            "operations.set-success", affected[0], formatMaterial(material)));
         return true;
     }
     
@@ -160,7 +192,7 @@ public class BlockOperationHandler {
     public boolean setBlocksPattern(Player player, BlockPattern pattern) {
         // Use async handler for large selections
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection != null ? selection.getVolume() : 0;
+        long volume = selection != null ? selection.getVolume() : 0;
         
         // Use async handler for selections above a threshold 
         if (volume > 1000) { 
@@ -181,33 +213,31 @@ public class BlockOperationHandler {
         Map<Material, Integer> materialsUsed = new HashMap<>();
         
         // Process the blocks
-        int affected = 0;
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Skip blacklisted blocks
-                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        continue;
-                    }
-                    
-                    // Store block for undo
-                    undoOp.addBlock(block.getLocation(), block.getBlockData());
-                    
-                    // Get random material from the pattern
-                    Material material = pattern.getRandomMaterial();
-                    
-                    // Change the block
-                    block.setType(material);
-                    
-                    // Count materials used
-                    materialsUsed.put(material, materialsUsed.getOrDefault(material, 0) + 1);
-                    
-                    affected++;
-                }
+        World world = selection.getWorld();
+        int[] affected = {0};
+        selection.getRegion().forEachBlock((x, y, z) -> {
+            Block block = world.getBlockAt(x, y, z);
+            
+            // Skip blacklisted blocks
+            if (plugin.getConfigManager().isBlacklisted(block.getType())) {
+                return;
             }
-        }
+            
+            // Get random material from the pattern
+            Material material = pattern.getRandomMaterial();
+            
+            // Store block for undo
+            undoOp.addBlock(block.getLocation(), block.getBlockData(), material);
+            
+            // Change the block
+            block.setBlockData(BlockDataPool.of(material));
+            markChanged(block);
+            
+            // Count materials used
+            materialsUsed.merge(material, 1, Integer::sum);
+            
+            affected[0]++;
+        });
         
         // Remove materials from player's inventory
         for (Map.Entry<Material, Integer> entry : materialsUsed.entrySet()) {
@@ -220,10 +250,10 @@ public class BlockOperationHandler {
         // Notify player
         if (pattern.size() == 1) {
             player.sendMessage(plugin.getMessageManager().getFormattedMessage(
-                "operations.set-success", affected, formatMaterial(pattern.getMaterials().get(0))));
+                "operations.set-success", affected[0], formatMaterial(pattern.getMaterials().get(0))));
         } else {
             player.sendMessage(plugin.getMessageManager().getFormattedMessage(
-                "operations.set-mixed-success", affected));
+                "operations.set-mixed-success", affected[0]));
         }
         
         return true;
@@ -239,7 +269,7 @@ public class BlockOperationHandler {
     public boolean replaceBlocks(Player player, Material fromMaterial, Material toMaterial) {
         // Use async handler for large selections
         Selection selection = plugin.getSelectionManager().getSelection(player);
-        int volume = selection != null ? selection.getVolume() : 0;
+        long volume = selection != null ? selection.getVolume() : 0;
         
         if (volume > 1000) {
             asyncHandler.replaceBlocksAsync(player, fromMaterial, toMaterial);
@@ -254,17 +284,8 @@ public class BlockOperationHandler {
         }
         
         // Count blocks to be replaced
-        int toReplace = 0;
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    if (block.getType() == fromMaterial && !plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        toReplace++;
-                    }
-                }
-            }
-        }
+        World world = selection.getWorld();
+        int toReplace = countBlocks(selection, fromMaterial);
         
         // Check if player has permission for this many blocks
         String rank = getRank(player);
@@ -284,24 +305,193 @@ public class BlockOperationHandler {
         // Create undo operation
         UndoOperation undoOp = new UndoOperation(player.getUniqueId());
         
+        // Process the blocks
+        int[] affected = {0};
+        selection.getRegion().forEachBlock((x, y, z) -> {
+            Block block = world.getBlockAt(x, y, z);
+            
+            // Only replace matching blocks
+            if (block.getType() == fromMaterial && !plugin.getConfigManager().isBlacklisted(block.getType())) {
+                // Store block for undo
+                undoOp.addBlock(block.getLocation(), block.getBlockData(), toMaterial);
+                
+                // Change the block
+                block.setBlockData(BlockDataPool.of(toMaterial));
+                markChanged(block);
+                affected[0]++;
+            }
+        });
+        
+        // Remove new materials from player's inventory
+        plugin.getInventoryManager().removeMaterial(player, toMaterial, affected[0]);
+        
+        // Add old materials to player's inventory
+        plugin.getInventoryManager().addMaterial(player, fromMaterial, affected[0]);
+        
+        // Add undo operation to history
+        addUndoOperation(player, undoOp);
+        
+        // Notify player
+        player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+            "operations.replace-success", affected[0], formatMaterial(fromMaterial), formatMaterial(toMaterial)));
+        return true;
+    }
+    
+    /**
+     * Set the given blocks to a specific material, e.g. the blocks of a confirmed preview.
+     * Every block is checked against the blacklist again before it is written.
+     * @param player Player
+     * @param material Material to set
+     * @param blocks Blocks to set
+     * @return true if operation was successful or started
+     */
+    public boolean setBlocksAt(Player player, Material material, List<Location> blocks) {
+        return setBlocksAt(player, material, blocks.iterator(), blocks.size());
+    }
+    
+    /**
+     * Set the given blocks to a specific material, reading them as they are written,
+     * e.g. straight from a confirmed preview without collecting them first
+     * @param player Player
+     * @param material Material to set
+     * @param blocks Blocks to set
+     * @param count Number of blocks
+     * @return true if operation was successful or started
+     */
+    public boolean setBlocksAt(Player player, Material material, Iterator<Location> blocks, int count) {
+        // Use async handler for large block lists
+        if (count > 1000) {
+            asyncHandler.setBlocksAsync(player, material, blocks, count);
+            return true; // Operation started
+        }
+        
+        if (count == 0) {
+            player.sendMessage(plugin.getMessageManager().getMessage("operations.no-applicable-blocks"));
+            return false;
+        }
+        
+        // Check if player has permission for this many blocks
+        String rank = getRank(player);
+        int blockLimit = plugin.getConfigManager().getRankBlockLimit(rank);
+        
+        if (count > blockLimit) {
+            player.sendMessage("§cYour selection is too large! Maximum: §6" + blockLimit + " blocks§c, Selected: §6" + count + " blocks");
+            return false;
+        }
+        
+        // Check if player has enough materials
+        if (!plugin.getInventoryManager().hasMaterial(player, material, count)) {
+            player.sendMessage("§cYou don't have enough materials! You need §6" + count + " " + formatMaterial(material) + "§c!");
+            return false;
+        }
+        
+        // Create undo operation
+        UndoOperation undoOp = new UndoOperation(player.getUniqueId());
+        
         // Process the blocks
         int affected = 0;
-        for (int x = selection.getMinX(); x <= selection.getMaxX(); x++) {
-            for (int y = selection.getMinY(); y <= selection.getMaxY(); y++) {
-                for (int z = selection.getMinZ(); z <= selection.getMaxZ(); z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Only replace matching blocks
-                    if (block.getType() == fromMaterial && !plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        // Store block for undo
-                        undoOp.addBlock(block.getLocation(), block.getBlockData());
-                        
-                        // Change the block
-                        block.setType(toMaterial);
-                        affected++;
-                    }
-                }
+        while (blocks.hasNext()) {
+            Location location = blocks.next();
+            Block block = location.getBlock();
+            
+            // Skip blocks that became blacklisted since they were collected
+            if (plugin.getConfigManager().isBlacklisted(block.getType())) {
+                continue;
             }
+            
+            // Store block for undo
+            undoOp.addBlock(location, block.getBlockData(), material);
+            
+            // Change the block
+            block.setBlockData(BlockDataPool.of(material));
+            markChanged(block);
+            affected++;
+        }
+        
+        // Remove materials from player's inventory
+        plugin.getInventoryManager().removeMaterial(player, material, affected);
+        
+        // Add undo operation to history
+        addUndoOperation(player, undoOp);
+        
+        // Notify player
+        player.sendMessage(plugin.getMessageManager().getFormattedMessage(
+            "operations.set-success", affected, formatMaterial(material)));
+        return true;
+    }
+    
+    /**
+     * Replace the given blocks with another material, e.g. the blocks of a confirmed preview.
+     * Blocks that no longer match the source material are skipped.
+     * @param player Player
+     * @param fromMaterial Material to replace
+     * @param toMaterial Material to replace with
+     * @param blocks Blocks to replace
+     * @return true if operation was successful or started
+     */
+    public boolean replaceBlocksAt(Player player, Material fromMaterial, Material toMaterial, List<Location> blocks) {
+        return replaceBlocksAt(player, fromMaterial, toMaterial, blocks.iterator(), blocks.size());
+    }
+    
+    /**
+     * Replace the given blocks with another material, reading them as they are written,
+     * e.g. straight from a confirmed preview without collecting them first
+     * @param player Player
+     * @param fromMaterial Material to replace
+     * @param toMaterial Material to replace with
+     * @param blocks Blocks to replace
+     * @param count Number of blocks
+     * @return true if operation was successful or started
+     */
+    public boolean replaceBlocksAt(Player player, Material fromMaterial, Material toMaterial,
+                                   Iterator<Location> blocks, int count) {
+        // Use async handler for large block lists
+        if (count > 1000) {
+            asyncHandler.replaceBlocksAsync(player, fromMaterial, toMaterial, blocks, count);
+            return true; // Operation started
+        }
+        
+        if (count == 0) {
+            player.sendMessage("§cNo blocks of type §6" + formatMaterial(fromMaterial) + " §cfound in the selection.");
+            return false;
+        }
+        
+        // Check if player has permission for this many blocks
+        String rank = getRank(player);
+        int blockLimit = plugin.getConfigManager().getRankBlockLimit(rank);
+        
+        if (count > blockLimit) {
+            player.sendMessage("§cToo many blocks to replace! Maximum: §6" + blockLimit + " blocks§c, Selected: §6" + count + " blocks");
+            return false;
+        }
+        
+        // Check if player has enough materials
+        if (!plugin.getInventoryManager().hasMaterial(player, toMaterial, count)) {
+            player.sendMessage("§cYou don't have enough materials! You need §6" + count + " " + formatMaterial(toMaterial) + "§c!");
+            return false;
+        }
+        
+        // Create undo operation
+        UndoOperation undoOp = new UndoOperation(player.getUniqueId());
+        
+        // Process the blocks
+        int affected = 0;
+        while (blocks.hasNext()) {
+            Location location = blocks.next();
+            Block block = location.getBlock();
+            
+            // Double-check block type (it might have changed)
+            if (block.getType() != fromMaterial || plugin.getConfigManager().isBlacklisted(block.getType())) {
+                continue;
+            }
+            
+            // Store block for undo
+            undoOp.addBlock(location, block.getBlockData(), toMaterial);
+            
+            // Change the block
+            block.setBlockData(BlockDataPool.of(toMaterial));
+            markChanged(block);
+            affected++;
         }
         
         // Remove new materials from player's inventory
@@ -319,47 +509,85 @@ public class BlockOperationHandler {
         return true;
     }
     
+    /**
+     * Report a written block, so previews covering it are revalidated before they are confirmed
+     * @param block Changed block
+     */
+    void markChanged(Block block) {
+        plugin.getVisualizationManager().getChangeTracker().markChanged(block);
+    }
+    
+    /**
+     * Count the non-blacklisted blocks of a material in a selection
+     * @param selection Complete selection
+     * @param material Material to count
+     * @return Number of matching blocks
+     */
+    public int countBlocks(Selection selection, Material material) {
+        if (plugin.getConfigManager().isBlacklisted(material)) {
+            return 0;
+        }
+        
+        World world = selection.getWorld();
+        int[] count = {0};
+        selection.getRegion().forEachBlock((x, y, z) -> {
+            if (world.getBlockAt(x, y, z).getType() == material) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+    
     /**
      * Undo the last operation performed by a player
      * @param player Player
      * @return true if undo was successful
      */
     public boolean undoLastOperation(Player player) {
+        // A running rollback still has to trim the history being undone
+        if (isRollingBack(player)) {
+            player.sendMessage(plugin.getMessageManager().getMessage("rollback.in-progress"));
+            return false;
+        }
+        
         // Cancel any running operations first
         if (asyncHandler != null && asyncHandler.hasActiveOperation(player)) {
             asyncHandler.cancelOperations(player);
             return true;
         }
         
-        Stack<UndoOperation> history = undoHistory.get(player.getUniqueId());
+        UUID playerId = player.getUniqueId();
+        Stack<UndoOperation> history = undoHistory.get(playerId);
         
-        if (history == null || history.isEmpty()) {
+        // Load stored history first; the undo continues once it is available
+        if (history == null) {
+            if (!pendingLoads.containsKey(playerId)) {
+                loadHistory(player);
+            }
+            return true;
+        }
+        
+        if (history.isEmpty()) {
             player.sendMessage(plugin.getMessageManager().getMessage("undo.no-operations"));
             return false;
         }
         
         UndoOperation undoOp = history.pop();
-        Map<Material, Integer> materials = new HashMap<>();
+        historyStore.remove(playerId, undoOp.getId());
+        rollbackIndex.remove(undoOp.getId());
         
         // Restore all blocks
         for (Map.Entry<Location, BlockData> entry : undoOp.getBlocks().entrySet()) {
-            Location location = entry.getKey();
-            BlockData oldData = entry.getValue();
-            Block block = location.getBlock();
-            
-            // Count materials for returning to inventory
-            Material currentType = block.getType();
-            if (currentType != Material.AIR) {
-                materials.put(currentType, materials.getOrDefault(currentType, 0) + 1);
-            }
-            
-            // Restore original state
-            block.setBlockData(oldData);
+            Block block = entry.getKey().getBlock();
+            block.setBlockData(entry.getValue());
+            markChanged(block);
         }
         
-        // Return materials to player's inventory
-        for (Map.Entry<Material, Integer> entry : materials.entrySet()) {
-            plugin.getInventoryManager().addMaterial(player, entry.getKey(), entry.getValue());
+        // Return the materials the operation placed, as recorded when it ran
+        for (Map.Entry<Material, Integer> entry : undoOp.getPlacedMaterials().entrySet()) {
+            if (entry.getKey() != Material.AIR) {
+                plugin.getInventoryManager().addMaterial(player, entry.getKey(), entry.getValue());
+            }
         }
         
         player.sendMessage(plugin.getMessageManager().getFormattedMessage(
@@ -374,8 +602,31 @@ public class BlockOperationHandler {
      */
     public void addUndoOperation(Player player, UndoOperation operation) {
         UUID playerId = player.getUniqueId();
-        Stack<UndoOperation> history = undoHistory.computeIfAbsent(playerId, k -> new Stack<>());
+        historyStore.append(operation);
+        rollbackIndex.record(operation);
+        
+        // Keep operations completed while the stored history is loading
+        List<UndoOperation> pending = pendingLoads.get(playerId);
+        if (pending != null) {
+            pending.add(operation);
+            return;
+        }
+        
+        // Not loaded yet; the stored history will include this operation
+        Stack<UndoOperation> history = undoHistory.get(playerId);
+        if (history == null) {
+            return;
+        }
         
+        pushUndoOperation(history, operation);
+    }
+    
+    /**
+     * Push an operation onto a history stack, dropping the oldest if full
+     * @param history History stack
+     * @param operation Operation to add
+     */
+    private void pushUndoOperation(Stack<UndoOperation> history, UndoOperation operation) {
         // Ensure history doesn't grow too large
         while (history.size() >= MAX_UNDO_HISTORY) {
             history.remove(0);
@@ -384,6 +635,266 @@ public class BlockOperationHandler {
         history.push(operation);
     }
     
+    /**
+     * Load a player's stored undo history and continue the pending undo
+     * @param player Player
+     */
+    private void loadHistory(Player player) {
+        UUID playerId = player.getUniqueId();
+        pendingLoads.put(playerId, new ArrayList<>());
+        
+        historyStore.load(playerId).thenAccept(stored -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                // Always clear the pending load, so a failed restore does not block later loads
+                Stack<UndoOperation> history;
+                List<UndoOperation> pending;
+                try {
+                    history = restoreHistory(playerId, stored);
+                } finally {
+                    pending = pendingLoads.remove(playerId);
+                }
+                for (UndoOperation operation : pending) {
+                    pushUndoOperation(history, operation);
+                }
+                undoHistory.put(playerId, history);
+                
+                if (player.isOnline()) {
+                    undoLastOperation(player);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Rebuild undo operations from their stored form
+     * @param playerId Player UUID
+     * @param stored Stored history
+     * @return History stack, oldest operation at the bottom
+     */
+    private Stack<UndoOperation> restoreHistory(UUID playerId, UndoHistoryStore.StoredHistory stored) {
+        // Parse each distinct block state once
+        String[] dictionary = stored.getDictionary();
+        BlockData[] data = new BlockData[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            try {
+                data[i] = BlockDataPool.intern(dictionary[i]);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Skipping unknown block data in undo history: " + dictionary[i]);
+            }
+        }
+        
+        Stack<UndoOperation> history = new Stack<>();
+        for (UndoHistoryStore.StoredOperation storedOp : stored.getOperations()) {
+            World world = Bukkit.getWorld(storedOp.getWorldId());
+            if (world == null) {
+                continue;
+            }
+            
+            // Reuse operations indexed at startup instead of keeping a second copy
+            UndoOperation indexed = rollbackIndex.get(storedOp.getId());
+            if (indexed != null) {
+                pushUndoOperation(history, indexed);
+                continue;
+            }
+            
+            UndoOperation operation = new UndoOperation(storedOp.getId(), playerId, storedOp.getTimestamp());
+            for (Map.Entry<Material, Integer> entry : storedOp.getPlacedMaterials().entrySet()) {
+                operation.addPlacedMaterial(entry.getKey(), entry.getValue());
+            }
+            int[] coords = storedOp.getCoords();
+            int[] dataIndexes = storedOp.getDataIndexes();
+            for (int i = 0; i < dataIndexes.length; i++) {
+                BlockData blockData = data[dataIndexes[i]];
+                if (blockData != null) {
+                    operation.addBlock(new Location(world, coords[i * 3], coords[i * 3 + 1], coords[i * 3 + 2]), blockData);
+                }
+            }
+            pushUndoOperation(history, operation);
+            rollbackIndex.record(operation);
+        }
+        return history;
+    }
+    
+    /**
+     * Index the stored operations that are still within the rollback retention,
+     * so rollbacks after a restart also cover them
+     */
+    private void rebuildRollbackIndex() {
+        long since = System.currentTimeMillis() - plugin.getConfigManager().getRollbackRetentionHours() * 60L * 60 * 1000;
+        historyStore.loadRecent(since).thenAccept(histories -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (Map.Entry<UUID, UndoHistoryStore.StoredHistory> entry : histories.entrySet()) {
+                    // Histories loaded in the meantime are already indexed
+                    if (!undoHistory.containsKey(entry.getKey())) {
+                        restoreHistory(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+        });
+    }
+    
+    /**
+     * Roll back every operation that touched an area since a given time.
+     * Operations are reversed newest first, so each block ends up in the state
+     * it had before the oldest matching edit. Blocks inside the area are removed
+     * from their operations; operations with blocks left outside stay in their
+     * owners' undo history with just those blocks. Nothing is refunded.
+     * @param player Player running the rollback
+     * @param region Area to roll back
+     * @param since Earliest operation timestamp to include
+     * @return Number of operations rolled back
+     */
+    public int rollbackArea(Player player, Region region, long since) {
+        if (asyncHandler == null || asyncHandler.hasActiveOperation(player)) {
+            player.sendMessage(plugin.getMessageManager().getMessage("async.operation-in-progress"));
+            return -1;
+        }
+        
+        List<UndoOperation> operations = rollbackIndex.query(region.getWorld(),
+                region.getMinX(), region.getMinZ(), region.getMaxX(), region.getMaxZ(), since);
+        if (operations.isEmpty()) {
+            return 0;
+        }
+        
+        Predicate<Location> inArea = location -> region.contains(
+                location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        
+        // Older operations overwrite newer ones, leaving each block's earliest state
+        Map<Location, BlockData> restores = new HashMap<>();
+        for (UndoOperation operation : operations) {
+            for (Map.Entry<Location, BlockData> entry : operation.getBlocks().entrySet()) {
+                if (inArea.test(entry.getKey())) {
+                    restores.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        
+        // Undo records are only trimmed once every block is back, so nothing is lost if the server stops midway
+        asyncHandler.rollbackAsync(player, restores, operations.size())
+            .thenRun(() -> trimRolledBack(operations, inArea));
+        return operations.size();
+    }
+    
+    /**
+     * Remove the blocks of a finished rollback from the operations it reversed
+     * @param operations Operations rolled back
+     * @param inArea Test for blocks inside the rolled back area
+     */
+    private void trimRolledBack(List<UndoOperation> operations, Predicate<Location> inArea) {
+        for (UndoOperation rolledBack : operations) {
+            // Skip operations that left their owner's history during the rollback
+            if (!isInHistory(rolledBack.getPlayerId(), rolledBack.getId())) {
+                rollbackIndex.remove(rolledBack.getId());
+                continue;
+            }
+            
+            UndoOperation operation = rollbackIndex.get(rolledBack.getId());
+            if (operation == null) {
+                operation = rolledBack;
+            }
+            
+            rollbackIndex.remove(operation.getId());
+            UndoOperation trimmed = operation.without(inArea);
+            if (trimmed.getBlocks().isEmpty()) {
+                removeFromHistory(operation.getPlayerId(), operation.getId());
+            } else {
+                replaceInHistory(trimmed);
+            }
+        }
+    }
+    
+    /**
+     * Check if an operation is still in its owner's undo history
+     * @param playerId Owner UUID
+     * @param operationId Operation ID
+     * @return true if the operation is still there, or the history is not loaded
+     */
+    private boolean isInHistory(UUID playerId, long operationId) {
+        Stack<UndoOperation> history = undoHistory.get(playerId);
+        if (history == null) {
+            return true;
+        }
+        for (UndoOperation operation : history) {
+            if (operation.getId() == operationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Replace an operation in its owner's undo history with a trimmed copy
+     * @param trimmed Operation with the same ID as the one to replace
+     */
+    private void replaceInHistory(UndoOperation trimmed) {
+        UnaryOperator<UndoOperation> replace = operation -> operation.getId() == trimmed.getId() ? trimmed : operation;
+        Stack<UndoOperation> history = undoHistory.get(trimmed.getPlayerId());
+        if (history != null) {
+            history.replaceAll(replace);
+        }
+        
+        List<UndoOperation> pending = pendingLoads.get(trimmed.getPlayerId());
+        if (pending != null) {
+            pending.replaceAll(replace);
+        }
+        
+        historyStore.append(trimmed);
+        rollbackIndex.record(trimmed);
+    }
+    
+    /**
+     * Remove an operation from its owner's undo history
+     * @param playerId Owner UUID
+     * @param operationId Operation ID
+     */
+    private void removeFromHistory(UUID playerId, long operationId) {
+        Stack<UndoOperation> history = undoHistory.get(playerId);
+        if (history != null) {
+            history.removeIf(operation -> operation.getId() == operationId);
+        }
+        
+        List<UndoOperation> pending = pendingLoads.get(playerId);
+        if (pending != null) {
+            pending.removeIf(operation -> operation.getId() == operationId);
+        }
+        
+        historyStore.remove(playerId, operationId);
+    }
+    
+    /**
+     * Release the stored history state of a player who left
+     * @param player Player
+     */
+    public void removePlayer(Player player) {
+        historyStore.unload(player.getUniqueId());
+    }
+    
+    /**
+     * Apply configuration changes after a reload
+     */
+    public void reload() {
+        rollbackIndex.setRetention(plugin.getConfigManager().getRollbackRetentionHours() * 60L * 60 * 1000);
+        rollbackIndex.setMaxBlocks(plugin.getConfigManager().getRollbackMaxIndexedBlocks());
+    }
+    
+    /**
+     * Finish running rollbacks and write out pending undo history
+     */
+    public void shutdown() {
+        if (asyncHandler != null) {
+            asyncHandler.finishRollbacks();
+        }
+        historyStore.shutdown();
+    }
+    
     /**
      * Get a player's rank
      * @param player Player
@@ -421,10 +932,15 @@ public class BlockOperationHandler {
      * @return true if any operation was cancelled
      */
     public boolean cancelOperations(Player player) {
-        if (asyncHandler != null && asyncHandler.hasActiveOperation(player)) {
-            asyncHandler.cancelOperations(player);
-            return true;
-        }
-        return false;
+        return asyncHandler != null && asyncHandler.cancelOperations(player);
+    }
+    
+    /**
+     * Check if a player is running an area rollback, which cannot be cancelled
+     * @param player Player
+     * @return true if a rollback is running
+     */
+    public boolean isRollingBack(Player player) {
+        return asyncHandler != null && asyncHandler.isRollingBack(player);
     }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package id.nusawedit.operations;
+
+import id.nusawedit.selection.Region;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * Spatial index of completed operations across all players, used for area rollbacks.
+ * Operations are indexed by the chunks they touched (chunk -> operation IDs) and
+ * kept for a limited retention period and up to a total number of blocks, dropping
+ * the oldest first. Only accessed from the main thread.
+ */
+public class RollbackIndex {
+    // World UUID -> chunk key -> IDs of operations that touched the chunk
+    private final Map<UUID, Map<Long, List<Long>>> chunkIndex = new HashMap<>();
+    
+    // Indexed operations by ID, and the same operations oldest first
+    private final Map<Long, IndexedOperation> operations = new HashMap<>();
+    private final TreeSet<IndexedOperation> byTime = new TreeSet<>(
+            Comparator.comparingLong((IndexedOperation indexed) -> indexed.operation.getTimestamp())
+                    .thenComparingLong(indexed -> indexed.operation.getId()));
+    
+    private long retentionMillis;
+    private long maxBlocks;
+    private long indexedBlocks;
+    
+    /**
+     * Create a new rollback index
+     * @param retentionMillis How long operations stay in the index
+     * @param maxBlocks Maximum number of blocks kept across all indexed operations
+     */
+    public RollbackIndex(long retentionMillis, long maxBlocks) {
+        this.retentionMillis = retentionMillis;
+        this.maxBlocks = maxBlocks;
+    }
+    
+    /**
+     * Set how long operations stay in the index
+     * @param retentionMillis Retention in milliseconds
+     */
+    public void setRetention(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+    
+    /**
+     * Set how many blocks the indexed operations may hold in total
+     * @param maxBlocks Maximum number of blocks
+     */
+    public void setMaxBlocks(long maxBlocks) {
+        this.maxBlocks = maxBlocks;
+    }
+    
+    /**
+     * Get an indexed operation
+     * @param operationId Operation ID
+     * @return Operation, or null if it is not indexed
+     */
+    public UndoOperation get(long operationId) {
+        IndexedOperation indexed = operations.get(operationId);
+        return indexed != null ? indexed.operation : null;
+    }
+    
+    /**
+     * Add a completed operation to the index
+     * @param operation Operation to index
+     */
+    public void record(UndoOperation operation) {
+        prune();
+        
+        if (operation.getBlocks().isEmpty() || operations.containsKey(operation.getId())
+                || operation.getTimestamp() < System.currentTimeMillis() - retentionMillis) {
+            return;
+        }
+        
+        UUID worldId = null;
+        Set<Long> chunks = new HashSet<>();
+        for (Location location : operation.getBlocks().keySet()) {
+            if (worldId == null) {
+                worldId = location.getWorld().getUID();
+            }
+            chunks.add(Region.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        }
+        
+        Map<Long, List<Long>> worldChunks = chunkIndex.computeIfAbsent(worldId, k -> new HashMap<>());
+        for (long chunk : chunks) {
+            worldChunks.computeIfAbsent(chunk, k -> new ArrayList<>(2)).add(operation.getId());
+        }
+        
+        IndexedOperation indexed = new IndexedOperation(operation, worldId, chunks, operation.getBlocks().size());
+        operations.put(operation.getId(), indexed);
+        byTime.add(indexed);
+        indexedBlocks += indexed.blockCount;
+        
+        // Drop the oldest operations, possibly this one, once over the block limit
+        while (indexedBlocks > maxBlocks && !byTime.isEmpty()) {
+            remove(byTime.first().operation.getId());
+        }
+    }
+    
+    /**
+     * Remove an operation from the index, e.g. after it was undone
+     * @param operationId Operation ID
+     */
+    public void remove(long operationId) {
+        IndexedOperation indexed = operations.remove(operationId);
+        if (indexed == null) {
+            return;
+        }
+        byTime.remove(indexed);
+        indexedBlocks -= indexed.blockCount;
+        
+        Map<Long, List<Long>> worldChunks = chunkIndex.get(indexed.worldId);
+        if (worldChunks == null) {
+            return;
+        }
+        
+        for (long chunk : indexed.chunks) {
+            List<Long> ids = worldChunks.get(chunk);
+            if (ids != null) {
+                ids.remove(operationId);
+                if (ids.isEmpty()) {
+                    worldChunks.remove(chunk);
+                }
+            }
+        }
+        
+        if (worldChunks.isEmpty()) {
+            chunkIndex.remove(indexed.worldId);
+        }
+    }
+    
+    /**
+     * Find operations that touched an area since a given time
+     * @param world World
+     * @param minX Minimum block X
+     * @param minZ Minimum block Z
+     * @param maxX Maximum block X
+     * @param maxZ Maximum block Z
+     * @param since Earliest operation timestamp to include
+     * @return Matching operations, newest first
+     */
+    public List<UndoOperation> query(World world, int minX, int minZ, int maxX, int maxZ, long since) {
+        prune();
+        
+        List<UndoOperation> result = new ArrayList<>();
+        Map<Long, List<Long>> worldChunks = chunkIndex.get(world.getUID());
+        if (worldChunks == null) {
+            return result;
+        }
+        
+        Set<Long> seen = new HashSet<>();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                List<Long> ids = worldChunks.get(Region.chunkKey(chunkX, chunkZ));
+                if (ids == null) {
+                    continue;
+                }
+                
+                for (long id : ids) {
+                    IndexedOperation indexed = operations.get(id);
+                    if (indexed != null && indexed.operation.getTimestamp() >= since && seen.add(id)) {
+                        result.add(indexed.operation);
+                    }
+                }
+            }
+        }
+        
+        result.sort(Comparator.comparingLong(UndoOperation::getTimestamp).reversed());
+        return result;
+    }
+    
+    /**
+     * Drop operations older than the retention period
+     */
+    private void prune() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        while (!byTime.isEmpty() && byTime.first().operation.getTimestamp() < cutoff) {
+            remove(byTime.first().operation.getId());
+        }
+    }
+    
+    /**
+     * An indexed operation with the chunks it touched
+     */
+    private static class IndexedOperation {
+        final UndoOperation operation;
+        final UUID worldId;
+        final Set<Long> chunks;
+        final int blockCount;
+        
+        IndexedOperation(UndoOperation operation, UUID worldId, Set<Long> chunks, int blockCount) {
+            this.operation = operation;
+            this.worldId = worldId;
+            this.chunks = chunks;
+            this.blockCount = blockCount;
+        }
+    }
+}
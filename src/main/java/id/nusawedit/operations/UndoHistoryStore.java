@@ -0,0 +1,620 @@
+package id.nusawedit.operations;
+
+import id.nusawedit.Plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Persists undo history to compact, append-only binary files (one per player).
+ *
+ * File layout: a header (magic + version) followed by records of the form
+ * {@code tag, payload length, payload}. Block data strings are stored once per
+ * file in dictionary records and referenced by index from operation records.
+ * Operation records also carry the materials placed, used for refunds on undo.
+ * Undos are recorded as remove markers and the file is compacted on load.
+ *
+ * All file access happens on a single I/O thread, so records are written and
+ * read in the order they were submitted.
+ */
+public class UndoHistoryStore {
+    private static final int MAGIC = 0x4E575548; // "NWUH"
+    private static final int VERSION = 2;
+    
+    private static final byte TAG_DICTIONARY = 1;
+    private static final byte TAG_OPERATION = 2;
+    private static final byte TAG_REMOVE = 3;
+    
+    // Compact a file once it holds this many records
+    private static final int COMPACT_THRESHOLD = 64;
+    
+    private final Plugin plugin;
+    private final File folder;
+    private final int maxOperations;
+    private final ExecutorService ioExecutor;
+    
+    // Per-file dictionary and record count of online players, only touched on the I/O thread
+    private final Map<UUID, FileState> fileStates = new HashMap<>();
+    
+    /**
+     * Create a new undo history store
+     * @param plugin Plugin instance
+     * @param maxOperations Maximum operations kept per player
+     */
+    public UndoHistoryStore(Plugin plugin, int maxOperations) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "undo");
+        this.maxOperations = maxOperations;
+        this.ioExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "NusaWEdit-UndoIO");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Append a completed operation to its owner's history file. Appending an operation
+     * again, e.g. after it was trimmed, replaces its earlier record in place.
+     * @param operation Completed operation
+     */
+    public void append(UndoOperation operation) {
+        ioExecutor.execute(() -> {
+            try {
+                writeOperation(operation);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to save undo history: " + operation.getPlayerId());
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    /**
+     * Record that an operation was undone
+     * @param playerId Owner of the operation
+     * @param operationId Operation ID
+     */
+    public void remove(UUID playerId, long operationId) {
+        ioExecutor.execute(() -> {
+            try {
+                writeRemove(playerId, operationId);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to update undo history: " + playerId);
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    /**
+     * Load a player's stored history off the main thread
+     * @param playerId Player UUID
+     * @return Future with the stored operations, oldest first
+     */
+    public CompletableFuture<StoredHistory> load(UUID playerId) {
+        CompletableFuture<StoredHistory> result = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            try {
+                result.complete(readHistory(playerId));
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to load undo history: " + playerId);
+                e.printStackTrace();
+                result.complete(new StoredHistory(new String[0], new ArrayList<>()));
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Load the stored histories of all players that changed since a given time, off the main thread
+     * @param since Earliest modification time in milliseconds
+     * @return Future with the stored history of each player
+     */
+    public CompletableFuture<Map<UUID, StoredHistory>> loadRecent(long since) {
+        CompletableFuture<Map<UUID, StoredHistory>> result = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            Map<UUID, StoredHistory> histories = new HashMap<>();
+            File[] files = folder.listFiles((dir, name) -> name.endsWith(".nwu"));
+            if (files != null) {
+                for (File file : files) {
+                    if (file.lastModified() < since) {
+                        continue;
+                    }
+                    
+                    String name = file.getName();
+                    try {
+                        UUID playerId = UUID.fromString(name.substring(0, name.length() - 4));
+                        histories.put(playerId, readHistory(playerId));
+                        
+                        // Most of these players are offline, their dictionaries are read again on the next write
+                        fileStates.remove(playerId);
+                    } catch (IllegalArgumentException | IOException e) {
+                        plugin.getLogger().warning("Failed to load undo history: " + name);
+                        e.printStackTrace();
+                    }
+                }
+            }
+            result.complete(histories);
+        });
+        return result;
+    }
+    
+    /**
+     * Forget a player's file dictionary once they leave; it is read again on their next write
+     * @param playerId Player UUID
+     */
+    public void unload(UUID playerId) {
+        ioExecutor.execute(() -> fileStates.remove(playerId));
+    }
+    
+    /**
+     * Finish pending writes and stop the I/O thread
+     */
+    public void shutdown() {
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out while saving undo history");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private File getFile(UUID playerId) {
+        return new File(folder, playerId.toString() + ".nwu");
+    }
+    
+    /**
+     * Get the dictionary state for a file, reading it from disk the first time
+     */
+    private FileState getFileState(UUID playerId) throws IOException {
+        if (!fileStates.containsKey(playerId)) {
+            readHistory(playerId);
+        }
+        return fileStates.get(playerId);
+    }
+    
+    private void writeOperation(UndoOperation operation) throws IOException {
+        Map<Location, BlockData> blocks = operation.getBlocks();
+        if (blocks.isEmpty()) {
+            return;
+        }
+        
+        FileState state = getFileState(operation.getPlayerId());
+        
+        // Encode block data strings, collecting any that are new to this file
+        List<String> newEntries = new ArrayList<>();
+        Map<String, Integer> newIndexes = new HashMap<>();
+        int[] dataIndexes = new int[blocks.size()];
+        int[] coords = new int[blocks.size() * 3];
+        UUID worldId = null;
+        
+        int i = 0;
+        for (Map.Entry<Location, BlockData> entry : blocks.entrySet()) {
+            Location location = entry.getKey();
+            if (worldId == null) {
+                worldId = location.getWorld().getUID();
+            }
+            
+            String data = entry.getValue().getAsString();
+            Integer index = state.dictionary.get(data);
+            if (index == null) {
+                index = newIndexes.get(data);
+            }
+            if (index == null) {
+                index = state.dictionary.size() + newEntries.size();
+                newIndexes.put(data, index);
+                newEntries.add(data);
+            }
+            dataIndexes[i] = index;
+            
+            coords[i * 3] = location.getBlockX();
+            coords[i * 3 + 1] = location.getBlockY();
+            coords[i * 3 + 2] = location.getBlockZ();
+            i++;
+        }
+        
+        StoredOperation stored = new StoredOperation(operation.getId(), operation.getTimestamp(),
+                worldId, coords, dataIndexes, operation.getPlacedMaterials());
+        
+        try (DataOutputStream out = openAppend(operation.getPlayerId())) {
+            if (!newEntries.isEmpty()) {
+                writeDictionaryRecord(out, newEntries);
+            }
+            writeOperationRecord(out, stored);
+        } catch (IOException e) {
+            // The file may hold part of the records; read it again before the next write
+            fileStates.remove(operation.getPlayerId());
+            throw e;
+        }
+        
+        // New entries only count once they are on disk
+        state.dictionary.putAll(newIndexes);
+        state.records += newEntries.isEmpty() ? 1 : 2;
+        
+        if (state.records >= COMPACT_THRESHOLD) {
+            readHistory(operation.getPlayerId());
+        }
+    }
+    
+    private void writeRemove(UUID playerId, long operationId) throws IOException {
+        if (!getFile(playerId).exists()) {
+            return;
+        }
+        
+        FileState state = getFileState(playerId);
+        try (DataOutputStream out = openAppend(playerId)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(8);
+            new DataOutputStream(buffer).writeLong(operationId);
+            writeRecord(out, TAG_REMOVE, buffer);
+            state.records++;
+        }
+    }
+    
+    private DataOutputStream openAppend(UUID playerId) throws IOException {
+        File file = getFile(playerId);
+        boolean isNew = !file.exists();
+        if (isNew) {
+            folder.mkdirs();
+        }
+        
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (isNew) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+        return out;
+    }
+    
+    private void writeRecord(DataOutputStream out, byte tag, ByteArrayOutputStream payload) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(payload.size());
+        payload.writeTo(out);
+    }
+    
+    private void writeDictionaryRecord(DataOutputStream out, List<String> entries) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        writeVarInt(payload, entries.size());
+        for (String entry : entries) {
+            payload.writeUTF(entry);
+        }
+        writeRecord(out, TAG_DICTIONARY, buffer);
+    }
+    
+    private void writeOperationRecord(DataOutputStream out, StoredOperation operation) throws IOException {
+        int count = operation.dataIndexes.length;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, operation.coords[i * 3]);
+            minY = Math.min(minY, operation.coords[i * 3 + 1]);
+            minZ = Math.min(minZ, operation.coords[i * 3 + 2]);
+        }
+        
+        // Coordinates are stored as unsigned offsets from the operation's minimum corner
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(count * 4 + 64);
+        DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeLong(operation.id);
+        payload.writeLong(operation.timestamp);
+        payload.writeLong(operation.worldId.getMostSignificantBits());
+        payload.writeLong(operation.worldId.getLeastSignificantBits());
+        payload.writeInt(minX);
+        payload.writeInt(minY);
+        payload.writeInt(minZ);
+        writeVarInt(payload, operation.placedMaterials.size());
+        for (Map.Entry<Material, Integer> entry : operation.placedMaterials.entrySet()) {
+            payload.writeUTF(entry.getKey().name());
+            writeVarInt(payload, entry.getValue());
+        }
+        writeVarInt(payload, count);
+        for (int i = 0; i < count; i++) {
+            writeVarInt(payload, operation.coords[i * 3] - minX);
+            writeVarInt(payload, operation.coords[i * 3 + 1] - minY);
+            writeVarInt(payload, operation.coords[i * 3 + 2] - minZ);
+            writeVarInt(payload, operation.dataIndexes[i]);
+        }
+        writeRecord(out, TAG_OPERATION, buffer);
+    }
+    
+    /**
+     * Read a history file, dropping undone and excess operations, and compact
+     * it when it holds more records than needed.
+     */
+    private StoredHistory readHistory(UUID playerId) throws IOException {
+        File file = getFile(playerId);
+        List<String> dictionary = new ArrayList<>();
+        LinkedHashMap<Long, StoredOperation> operations = new LinkedHashMap<>();
+        int records = 0;
+        
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int version = in.readInt() == MAGIC ? in.readByte() : -1;
+                if (version < 1 || version > VERSION) {
+                    throw new IOException("Unsupported undo history format: " + file.getName());
+                }
+                
+                while (true) {
+                    byte tag;
+                    try {
+                        tag = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    
+                    int length = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        // A damaged length is handled like a truncated record
+                        throw new EOFException("Invalid record length " + length);
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    records++;
+                    
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    if (tag == TAG_DICTIONARY) {
+                        int count = readVarInt(record);
+                        for (int i = 0; i < count; i++) {
+                            dictionary.add(record.readUTF());
+                        }
+                    } else if (tag == TAG_OPERATION) {
+                        StoredOperation operation = readOperation(record, version);
+                        operations.put(operation.id, operation);
+                    } else if (tag == TAG_REMOVE) {
+                        operations.remove(record.readLong());
+                    }
+                }
+                
+                // Older files are rewritten in the current format before appending
+                if (version < VERSION) {
+                    records = Integer.MAX_VALUE;
+                }
+            } catch (EOFException e) {
+                // Truncated trailing record from an interrupted write; keep what was read
+                plugin.getLogger().warning("Undo history truncated, recovering: " + file.getName());
+                records = Integer.MAX_VALUE;
+            }
+        }
+        
+        List<StoredOperation> kept = new ArrayList<>(operations.values());
+        if (kept.size() > maxOperations) {
+            kept = new ArrayList<>(kept.subList(kept.size() - maxOperations, kept.size()));
+        }
+        
+        String[] entries = dictionary.toArray(new String[0]);
+        if (file.exists() && records > kept.size() + 1) {
+            entries = compact(playerId, entries, kept);
+        } else {
+            FileState state = new FileState();
+            for (int i = 0; i < entries.length; i++) {
+                state.dictionary.put(entries[i], i);
+            }
+            state.records = records;
+            fileStates.put(playerId, state);
+        }
+        
+        return new StoredHistory(entries, kept);
+    }
+    
+    private StoredOperation readOperation(DataInputStream in, int version) throws IOException {
+        long id = in.readLong();
+        long timestamp = in.readLong();
+        UUID worldId = new UUID(in.readLong(), in.readLong());
+        int minX = in.readInt();
+        int minY = in.readInt();
+        int minZ = in.readInt();
+        
+        // Version 1 records carry no placed materials, so nothing is refunded for them
+        Map<Material, Integer> placedMaterials = new EnumMap<>(Material.class);
+        if (version >= 2) {
+            int materials = readVarInt(in);
+            for (int i = 0; i < materials; i++) {
+                Material material = Material.getMaterial(in.readUTF());
+                int amount = readVarInt(in);
+                if (material != null) {
+                    placedMaterials.put(material, amount);
+                }
+            }
+        }
+        
+        int count = readVarInt(in);
+        int[] coords = new int[count * 3];
+        int[] dataIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            coords[i * 3] = minX + readVarInt(in);
+            coords[i * 3 + 1] = minY + readVarInt(in);
+            coords[i * 3 + 2] = minZ + readVarInt(in);
+            dataIndexes[i] = readVarInt(in);
+        }
+        
+        return new StoredOperation(id, timestamp, worldId, coords, dataIndexes, placedMaterials);
+    }
+    
+    /**
+     * Rewrite a history file with only the given operations and a dictionary
+     * containing just the entries they reference. The operations are remapped
+     * in place to the new dictionary, which is returned.
+     */
+    private String[] compact(UUID playerId, String[] dictionary, List<StoredOperation> operations) throws IOException {
+        File file = getFile(playerId);
+        File temp = new File(folder, playerId.toString() + ".nwu.tmp");
+        
+        int[] remap = new int[dictionary.length];
+        Arrays.fill(remap, -1);
+        List<String> entries = new ArrayList<>();
+        for (StoredOperation operation : operations) {
+            for (int index : operation.dataIndexes) {
+                if (remap[index] < 0) {
+                    remap[index] = entries.size();
+                    entries.add(dictionary[index]);
+                }
+            }
+        }
+        
+        for (StoredOperation operation : operations) {
+            for (int i = 0; i < operation.dataIndexes.length; i++) {
+                operation.dataIndexes[i] = remap[operation.dataIndexes[i]];
+            }
+        }
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeDictionaryRecord(out, entries);
+            for (StoredOperation operation : operations) {
+                writeOperationRecord(out, operation);
+            }
+        }
+        
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        FileState state = new FileState();
+        for (String entry : entries) {
+            state.dictionary.put(entry, state.dictionary.size());
+        }
+        state.records = operations.size() + 1;
+        fileStates.put(playerId, state);
+        
+        return entries.toArray(new String[0]);
+    }
+    
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    /**
+     * Dictionary and record count of a history file
+     */
+    private static class FileState {
+        final Map<String, Integer> dictionary = new HashMap<>();
+        int records;
+    }
+    
+    /**
+     * Stored history of a player, as read from disk
+     */
+    public static class StoredHistory {
+        private final String[] dictionary;
+        private final List<StoredOperation> operations;
+        
+        StoredHistory(String[] dictionary, List<StoredOperation> operations) {
+            this.dictionary = dictionary;
+            this.operations = operations;
+        }
+        
+        /**
+         * Get the block data strings referenced by the operations
+         * @return Dictionary of block data strings
+         */
+        public String[] getDictionary() {
+            return dictionary;
+        }
+        
+        /**
+         * Get the stored operations, oldest first
+         * @return List of operations
+         */
+        public List<StoredOperation> getOperations() {
+            return operations;
+        }
+    }
+    
+    /**
+     * A single operation as stored on disk
+     */
+    public static class StoredOperation {
+        final long id;
+        final long timestamp;
+        final UUID worldId;
+        final int[] coords;
+        final int[] dataIndexes;
+        final Map<Material, Integer> placedMaterials;
+        
+        StoredOperation(long id, long timestamp, UUID worldId, int[] coords, int[] dataIndexes,
+                        Map<Material, Integer> placedMaterials) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.worldId = worldId;
+            this.coords = coords;
+            this.dataIndexes = dataIndexes;
+            this.placedMaterials = placedMaterials;
+        }
+        
+        public long getId() {
+            return id;
+        }
+        
+        public long getTimestamp() {
+            return timestamp;
+        }
+        
+        public UUID getWorldId() {
+            return worldId;
+        }
+        
+        /**
+         * Get block coordinates as packed x, y, z triples
+         * @return Coordinate array
+         */
+        public int[] getCoords() {
+            return coords;
+        }
+        
+        /**
+         * Get the dictionary index of each block's original data
+         * @return Dictionary indexes
+         */
+        public int[] getDataIndexes() {
+            return dataIndexes;
+        }
+        
+        /**
+         * Get the materials placed by the operation
+         * @return Map of materials to amounts
+         */
+        public Map<Material, Integer> getPlacedMaterials() {
+            return placedMaterials;
+        }
+    }
+}
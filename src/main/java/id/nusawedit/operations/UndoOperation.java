@@ -1,36 +1,110 @@
 package id.nusawedit.operations;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.block.data.BlockData;
 
 /**
  * Represents an operation that can be undone
  */
 public class UndoOperation {
+    // Seeded from the clock so IDs keep increasing across restarts
+    private static final AtomicLong NEXT_ID = new AtomicLong(System.currentTimeMillis() << 12);
+    
+    private final long id;
     private final UUID playerId;
     private final long timestamp;
     private final Map<Location, BlockData> blocks = new HashMap<>();
     
+    // Materials placed by the forward operation, refunded on undo
+    private final Map<Material, Integer> placedMaterials = new EnumMap<>(Material.class);
+    
     /**
      * Create a new undo operation
      * @param playerId Player UUID
      */
     public UndoOperation(UUID playerId) {
+        this(NEXT_ID.getAndIncrement(), playerId, System.currentTimeMillis());
+    }
+    
+    /**
+     * Recreate a stored undo operation
+     * @param id Operation ID
+     * @param playerId Player UUID
+     * @param timestamp Time the operation was created
+     */
+    public UndoOperation(long id, UUID playerId, long timestamp) {
+        this.id = id;
         this.playerId = playerId;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
     
     /**
      * Add a block to the undo operation
      * @param location Block location
-     * @param data Original block data
+     * @param data Original block data, stored as its pooled canonical instance
      */
     public void addBlock(Location location, BlockData data) {
-        blocks.put(location.clone(), data);
+        blocks.put(location.clone(), BlockDataPool.intern(data));
+    }
+    
+    /**
+     * Add a block to the undo operation and record the material placed over it
+     * @param location Block location
+     * @param data Original block data
+     * @param placed Material placed by the operation
+     */
+    public void addBlock(Location location, BlockData data, Material placed) {
+        addBlock(location, data);
+        addPlacedMaterial(placed, 1);
+    }
+    
+    /**
+     * Record materials placed by the operation
+     * @param material Material placed
+     * @param amount Number of blocks
+     */
+    public void addPlacedMaterial(Material material, int amount) {
+        placedMaterials.merge(material, amount, Integer::sum);
+    }
+    
+    /**
+     * Copy the operation without some of its blocks, e.g. after they were rolled back.
+     * Placed materials are not recorded per block, so they are scaled down to the blocks left.
+     * @param removed Locations of the blocks to leave out
+     * @return Operation with the same ID and the remaining blocks
+     */
+    public UndoOperation without(Predicate<Location> removed) {
+        UndoOperation trimmed = new UndoOperation(id, playerId, timestamp);
+        for (Map.Entry<Location, BlockData> entry : blocks.entrySet()) {
+            if (!removed.test(entry.getKey())) {
+                trimmed.blocks.put(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        int kept = trimmed.blocks.size();
+        for (Map.Entry<Material, Integer> entry : placedMaterials.entrySet()) {
+            int amount = (int) ((long) entry.getValue() * kept / blocks.size());
+            if (amount > 0) {
+                trimmed.placedMaterials.put(entry.getKey(), amount);
+            }
+        }
+        return trimmed;
+    }
+    
+    /**
+     * Get the unique ID of this operation
+     * @return Operation ID
+     */
+    public long getId() {
+        return id;
     }
     
     /**
@@ -56,4 +130,12 @@ public class UndoOperation {
     public Map<Location, BlockData> getBlocks() {
         return blocks;
     }
+    
+    /**
+     * Get the materials placed by this operation
+     * @return Map of materials to amounts
+     */
+    public Map<Material, Integer> getPlacedMaterials() {
+        return placedMaterials;
+    }
 }
\ No newline at end of file
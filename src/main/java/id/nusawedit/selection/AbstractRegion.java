@@ -0,0 +1,176 @@
+package id.nusawedit.selection;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bukkit.World;
+
+/**
+ * Base class for regions that are made of vertical block columns.
+ *
+ * Shapes only describe which Y span each (x, z) column covers; iteration,
+ * volume and chunk calculation are shared here. Regions are immutable, so
+ * volume and chunks are computed once on first use.
+ */
+public abstract class AbstractRegion implements Region {
+    // Returned by columnSpan for columns outside the region
+    protected static final long NO_SPAN = Long.MIN_VALUE;
+    
+    protected final World world;
+    protected final int minX, minY, minZ, maxX, maxY, maxZ;
+    
+    // Computed on first use; regions are read from async tasks as well
+    private volatile long volume = -1;
+    private volatile Set<Long> chunks;
+    
+    /**
+     * Create a region with the given bounding box, clamped to the world height
+     */
+    protected AbstractRegion(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.world = world;
+        this.minX = minX;
+        this.minY = Math.max(minY, world.getMinHeight());
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = Math.min(maxY, world.getMaxHeight() - 1);
+        this.maxZ = maxZ;
+    }
+    
+    /**
+     * Get the Y span of a column inside the bounding box
+     * @param x Block X
+     * @param z Block Z
+     * @return Span packed with {@link #span(int, int)}, or {@link #NO_SPAN}
+     */
+    protected abstract long columnSpan(int x, int z);
+    
+    /**
+     * Pack a Y span, clamped to the bounding box
+     * @param low Lowest Y
+     * @param high Highest Y
+     * @return Packed span, or {@link #NO_SPAN} if empty
+     */
+    protected final long span(int low, int high) {
+        low = Math.max(low, minY);
+        high = Math.min(high, maxY);
+        if (low > high) {
+            return NO_SPAN;
+        }
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+    
+    @Override
+    public final void forEachBlock(BlockVisitor visitor) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                long span = columnSpan(x, z);
+                if (span == NO_SPAN) {
+                    continue;
+                }
+                
+                int high = (int) span;
+                for (int y = (int) (span >> 32); y <= high; y++) {
+                    visitor.visit(x, y, z);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public boolean contains(int x, int y, int z) {
+        if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+            return false;
+        }
+        
+        long span = columnSpan(x, z);
+        return span != NO_SPAN && y >= (int) (span >> 32) && y <= (int) span;
+    }
+    
+    @Override
+    public long getVolume() {
+        if (volume < 0) {
+            long total = 0;
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    long span = columnSpan(x, z);
+                    if (span != NO_SPAN) {
+                        total += (long) (int) span - (int) (span >> 32) + 1;
+                    }
+                }
+            }
+            volume = total;
+        }
+        return volume;
+    }
+    
+    @Override
+    public Set<Long> getChunks() {
+        if (chunks == null) {
+            Set<Long> result = new HashSet<>();
+            for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+                for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                    if (touchesChunk(chunkX, chunkZ)) {
+                        result.add(Region.chunkKey(chunkX, chunkZ));
+                    }
+                }
+            }
+            chunks = Collections.unmodifiableSet(result);
+        }
+        return chunks;
+    }
+    
+    /**
+     * Check if any column of a chunk is part of the region
+     */
+    private boolean touchesChunk(int chunkX, int chunkZ) {
+        int startX = Math.max(minX, chunkX << 4);
+        int endX = Math.min(maxX, (chunkX << 4) + 15);
+        int startZ = Math.max(minZ, chunkZ << 4);
+        int endZ = Math.min(maxZ, (chunkZ << 4) + 15);
+        
+        for (int x = startX; x <= endX; x++) {
+            for (int z = startZ; z <= endZ; z++) {
+                if (columnSpan(x, z) != NO_SPAN) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public World getWorld() {
+        return world;
+    }
+    
+    @Override
+    public int getMinX() {
+        return minX;
+    }
+    
+    @Override
+    public int getMinY() {
+        return minY;
+    }
+    
+    @Override
+    public int getMinZ() {
+        return minZ;
+    }
+    
+    @Override
+    public int getMaxX() {
+        return maxX;
+    }
+    
+    @Override
+    public int getMaxY() {
+        return maxY;
+    }
+    
+    @Override
+    public int getMaxZ() {
+        return maxZ;
+    }
+}
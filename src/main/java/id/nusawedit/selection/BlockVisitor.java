@@ -0,0 +1,16 @@
+package id.nusawedit.selection;
+
+/**
+ * Callback for iterating the blocks of a {@link Region}
+ */
+@FunctionalInterface
+public interface BlockVisitor {
+    
+    /**
+     * Visit a block
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     */
+    void visit(int x, int y, int z);
+}
@@ -0,0 +1,27 @@
+package id.nusawedit.selection;
+
+import org.bukkit.World;
+
+/**
+ * Box-shaped region between two corners
+ */
+public class CuboidRegion extends AbstractRegion {
+    
+    public CuboidRegion(World world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        super(world, Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2),
+                Math.max(x1, x2), Math.max(y1, y2), Math.max(z1, z2));
+    }
+    
+    @Override
+    protected long columnSpan(int x, int z) {
+        return span(minY, maxY);
+    }
+    
+    @Override
+    public long getVolume() {
+        if (minY > maxY) {
+            return 0;
+        }
+        return (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+    }
+}
@@ -0,0 +1,29 @@
+package id.nusawedit.selection;
+
+import org.bukkit.World;
+
+/**
+ * Upright cylinder around a center column
+ */
+public class CylinderRegion extends AbstractRegion {
+    private final int centerX, centerZ;
+    private final double radiusSquared;
+    
+    public CylinderRegion(World world, int centerX, int centerZ, int minY, int maxY, double radius) {
+        super(world, centerX - (int) radius, Math.min(minY, maxY), centerZ - (int) radius,
+                centerX + (int) radius, Math.max(minY, maxY), centerZ + (int) radius);
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.radiusSquared = radius * radius;
+    }
+    
+    @Override
+    protected long columnSpan(int x, int z) {
+        int dx = x - centerX;
+        int dz = z - centerZ;
+        if ((double) dx * dx + (double) dz * dz > radiusSquared) {
+            return NO_SPAN;
+        }
+        return span(minY, maxY);
+    }
+}
@@ -0,0 +1,79 @@
+package id.nusawedit.selection;
+
+import org.bukkit.World;
+
+/**
+ * Vertical prism over a polygon of block columns. Columns on the polygon's
+ * edges are part of the region.
+ */
+public class PolygonRegion extends AbstractRegion {
+    private final int[] pointsX;
+    private final int[] pointsZ;
+    
+    /**
+     * Create a polygon region
+     * @param world World
+     * @param pointsX X coordinates of the vertices, in order
+     * @param pointsZ Z coordinates of the vertices, in order
+     * @param minY Lowest Y
+     * @param maxY Highest Y
+     */
+    public PolygonRegion(World world, int[] pointsX, int[] pointsZ, int minY, int maxY) {
+        super(world, min(pointsX), Math.min(minY, maxY), min(pointsZ),
+                max(pointsX), Math.max(minY, maxY), max(pointsZ));
+        this.pointsX = pointsX.clone();
+        this.pointsZ = pointsZ.clone();
+    }
+    
+    @Override
+    protected long columnSpan(int x, int z) {
+        return containsColumn(x, z) ? span(minY, maxY) : NO_SPAN;
+    }
+    
+    /**
+     * Even-odd test for a column, counting columns on an edge as inside
+     */
+    private boolean containsColumn(int x, int z) {
+        boolean inside = false;
+        for (int i = 0, j = pointsX.length - 1; i < pointsX.length; j = i++) {
+            int x1 = pointsX[i], z1 = pointsZ[i];
+            int x2 = pointsX[j], z2 = pointsZ[j];
+            
+            // On the edge between the two vertices
+            long cross = (long) (x2 - x1) * (z - z1) - (long) (z2 - z1) * (x - x1);
+            if (cross == 0 && x >= Math.min(x1, x2) && x <= Math.max(x1, x2)
+                    && z >= Math.min(z1, z2) && z <= Math.max(z1, z2)) {
+                return true;
+            }
+            
+            if ((z1 > z) != (z2 > z) && x < (double) (x2 - x1) * (z - z1) / (z2 - z1) + x1) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+    
+    /**
+     * Get the number of vertices
+     * @return Vertex count
+     */
+    public int getPointCount() {
+        return pointsX.length;
+    }
+    
+    private static int min(int[] values) {
+        int result = Integer.MAX_VALUE;
+        for (int value : values) {
+            result = Math.min(result, value);
+        }
+        return result;
+    }
+    
+    private static int max(int[] values) {
+        int result = Integer.MIN_VALUE;
+        for (int value : values) {
+            result = Math.max(result, value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package id.nusawedit.selection;
+
+import java.util.Set;
+
+import org.bukkit.World;
+
+/**
+ * A shaped area of blocks in a single world.
+ *
+ * All code that needs every block of a selection (operations, previews and
+ * counting) walks it through {@link #forEachBlock(BlockVisitor)}, which passes
+ * plain coordinates and allocates nothing per block.
+ */
+public interface Region {
+    
+    /**
+     * Get the world of the region
+     * @return World
+     */
+    World getWorld();
+    
+    /**
+     * Get minimum X coordinate of the bounding box
+     * @return Min X
+     */
+    int getMinX();
+    
+    /**
+     * Get minimum Y coordinate of the bounding box
+     * @return Min Y
+     */
+    int getMinY();
+    
+    /**
+     * Get minimum Z coordinate of the bounding box
+     * @return Min Z
+     */
+    int getMinZ();
+    
+    /**
+     * Get maximum X coordinate of the bounding box
+     * @return Max X
+     */
+    int getMaxX();
+    
+    /**
+     * Get maximum Y coordinate of the bounding box
+     * @return Max Y
+     */
+    int getMaxY();
+    
+    /**
+     * Get maximum Z coordinate of the bounding box
+     * @return Max Z
+     */
+    int getMaxZ();
+    
+    /**
+     * Get the exact number of blocks in the region
+     * @return Volume in blocks
+     */
+    long getVolume();
+    
+    /**
+     * Check if a block is inside the region
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @return true if inside
+     */
+    boolean contains(int x, int y, int z);
+    
+    /**
+     * Get the chunks that contain at least one block of the region
+     * @return Chunk keys, see {@link #chunkKey(int, int)}
+     */
+    Set<Long> getChunks();
+    
+    /**
+     * Visit every block in the region, column by column
+     * @param visitor Visitor called with the coordinates of each block
+     */
+    void forEachBlock(BlockVisitor visitor);
+    
+    /**
+     * Pack chunk coordinates into a single key
+     * @param chunkX Chunk X
+     * @param chunkZ Chunk Z
+     * @return Chunk key
+     */
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,26 @@
+package id.nusawedit.selection;
+
+/**
+ * Shapes a selection can take
+ */
+public enum RegionShape {
+    CUBOID,
+    SPHERE,
+    CYLINDER,
+    POLYGON,
+    UNION;
+    
+    /**
+     * Find a shape by name, ignoring case
+     * @param name Shape name
+     * @return Shape, or null if unknown
+     */
+    public static RegionShape fromName(String name) {
+        for (RegionShape shape : values()) {
+            if (shape.name().equalsIgnoreCase(name)) {
+                return shape;
+            }
+        }
+        return null;
+    }
+}
@@ -1,38 +1,136 @@
 package id.nusawedit.selection;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.bukkit.Location;
 import org.bukkit.World;
 
 /**
- * Represents a cuboid selection between two points
+ * Immutable snapshot of a player's selection, made of wand positions and a shape.
+ *
+ * Cuboid: pos1 and pos2 are opposite corners.
+ * Sphere: pos1 is the center, pos2 is a point on the surface.
+ * Cylinder: pos1 is the base center, pos2 sets the radius and the height.
+ * Polygon: pos1 is the first vertex, every pos2 adds another vertex.
+ * Union: pos1 and pos2 are corners of a box; every pos2 adds the box to the union.
+ *
+ * Changes create a new snapshot with a new version, so snapshots can be read
+ * from any thread and the version can be used as a cache key.
  */
-public class Selection {
-    private Location pos1;
-    private Location pos2;
+public final class Selection {
+    private static final AtomicLong NEXT_VERSION = new AtomicLong();
+    
+    /**
+     * Selection without any positions
+     */
+    public static final Selection EMPTY = new Selection(null, null, RegionShape.CUBOID, Collections.emptyList());
+    
+    private final Location pos1;
+    private final Location pos2;
+    private final RegionShape shape;
+    
+    // Polygon vertices after pos1, or corner pairs of the boxes in a union
+    private final List<Location> points;
+    
+    private final long version;
+    
+    // Region built from the positions, or null if incomplete
+    private final Region region;
+    
+    private Selection(Location pos1, Location pos2, RegionShape shape, List<Location> points) {
+        this.pos1 = pos1;
+        this.pos2 = pos2;
+        this.shape = shape;
+        this.points = points;
+        this.version = NEXT_VERSION.incrementAndGet();
+        this.region = isComplete() ? createRegion() : null;
+    }
     
     /**
      * Check if selection is complete (both positions set)
      * @return true if complete
      */
     public boolean isComplete() {
+        if (shape == RegionShape.POLYGON) {
+            return pos1 != null && points.size() >= 2;
+        }
+        if (shape == RegionShape.UNION) {
+            return !points.isEmpty();
+        }
         return pos1 != null && pos2 != null && pos1.getWorld().equals(pos2.getWorld());
     }
     
+    /**
+     * Get the region covered by the selection
+     * @return Region, or null if incomplete
+     */
+    public Region getRegion() {
+        return region;
+    }
+    
+    /**
+     * Build the region for the current shape
+     */
+    private Region createRegion() {
+        World world = pos1.getWorld();
+        switch (shape) {
+            case UNION:
+                List<CuboidRegion> boxes = new ArrayList<>(points.size() / 2);
+                for (int i = 0; i < points.size(); i += 2) {
+                    Location a = points.get(i);
+                    Location b = points.get(i + 1);
+                    boxes.add(new CuboidRegion(a.getWorld(), a.getBlockX(), a.getBlockY(), a.getBlockZ(),
+                            b.getBlockX(), b.getBlockY(), b.getBlockZ()));
+                }
+                return new UnionRegion(points.get(0).getWorld(), boxes);
+            case SPHERE:
+                return new SphereRegion(world, pos1.getBlockX(), pos1.getBlockY(), pos1.getBlockZ(),
+                        distance(pos1.getBlockX() - pos2.getBlockX(), pos1.getBlockY() - pos2.getBlockY(), pos1.getBlockZ() - pos2.getBlockZ()));
+            case CYLINDER:
+                return new CylinderRegion(world, pos1.getBlockX(), pos1.getBlockZ(), pos1.getBlockY(), pos2.getBlockY(),
+                        distance(pos1.getBlockX() - pos2.getBlockX(), 0, pos1.getBlockZ() - pos2.getBlockZ()));
+            case POLYGON:
+                int[] pointsX = new int[points.size() + 1];
+                int[] pointsZ = new int[pointsX.length];
+                int minY = pos1.getBlockY();
+                int maxY = pos1.getBlockY();
+                pointsX[0] = pos1.getBlockX();
+                pointsZ[0] = pos1.getBlockZ();
+                for (int i = 0; i < points.size(); i++) {
+                    Location point = points.get(i);
+                    pointsX[i + 1] = point.getBlockX();
+                    pointsZ[i + 1] = point.getBlockZ();
+                    minY = Math.min(minY, point.getBlockY());
+                    maxY = Math.max(maxY, point.getBlockY());
+                }
+                return new PolygonRegion(world, pointsX, pointsZ, minY, maxY);
+            default:
+                return new CuboidRegion(world, pos1.getBlockX(), pos1.getBlockY(), pos1.getBlockZ(),
+                        pos2.getBlockX(), pos2.getBlockY(), pos2.getBlockZ());
+        }
+    }
+    
+    private static double distance(int dx, int dy, int dz) {
+        return Math.sqrt((double) dx * dx + (double) dy * dy + (double) dz * dz);
+    }
+    
+    /**
+     * Get the version of this snapshot. Every change produces a higher version.
+     * @return Version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
     /**
      * Get the volume of the selection
      * @return Volume in blocks, or -1 if incomplete
      */
-    public int getVolume() {
-        if (!isComplete()) {
-            return -1;
-        }
-        
-        // Calculate dimensions
-        int xSize = Math.abs(pos2.getBlockX() - pos1.getBlockX()) + 1;
-        int ySize = Math.abs(pos2.getBlockY() - pos1.getBlockY()) + 1;
-        int zSize = Math.abs(pos2.getBlockZ() - pos1.getBlockZ()) + 1;
-        
-        return xSize * ySize * zSize;
+    public long getVolume() {
+        return region != null ? region.getVolume() : -1;
     }
     
     /**
@@ -40,7 +138,7 @@ public class Selection {
      * @return Min X
      */
     public int getMinX() {
-        return Math.min(pos1.getBlockX(), pos2.getBlockX());
+        return region.getMinX();
     }
     
     /**
@@ -48,7 +146,7 @@ public class Selection {
      * @return Max X
      */
     public int getMaxX() {
-        return Math.max(pos1.getBlockX(), pos2.getBlockX());
+        return region.getMaxX();
     }
     
     /**
@@ -56,7 +154,7 @@ public class Selection {
      * @return Min Y
      */
     public int getMinY() {
-        return Math.min(pos1.getBlockY(), pos2.getBlockY());
+        return region.getMinY();
     }
     
     /**
@@ -64,7 +162,7 @@ public class Selection {
      * @return Max Y
      */
     public int getMaxY() {
-        return Math.max(pos1.getBlockY(), pos2.getBlockY());
+        return region.getMaxY();
     }
     
     /**
@@ -72,7 +170,7 @@ public class Selection {
      * @return Min Z
      */
     public int getMinZ() {
-        return Math.min(pos1.getBlockZ(), pos2.getBlockZ());
+        return region.getMinZ();
     }
     
     /**
@@ -80,7 +178,7 @@ public class Selection {
      * @return Max Z
      */
     public int getMaxZ() {
-        return Math.max(pos1.getBlockZ(), pos2.getBlockZ());
+        return region.getMaxZ();
     }
     
     /**
@@ -88,38 +186,110 @@ public class Selection {
      * @return World, or null if incomplete
      */
     public World getWorld() {
-        return isComplete() ? pos1.getWorld() : null;
+        return region != null ? region.getWorld() : null;
     }
     
     /**
-     * Get first position
-     * @return Position 1
+     * Get the selection shape
+     * @return Shape
      */
-    public Location getPos1() {
-        return pos1;
+    public RegionShape getShape() {
+        return shape;
+    }
+    
+    /**
+     * Get the number of polygon vertices, including pos1
+     * @return Vertex count
+     */
+    public int getPolygonPointCount() {
+        return pos1 != null ? points.size() + 1 : points.size();
     }
     
     /**
-     * Set first position
-     * @param pos1 Position 1
+     * Get the number of boxes in a union selection
+     * @return Box count
      */
-    public void setPos1(Location pos1) {
-        this.pos1 = pos1.clone();
+    public int getUnionBoxCount() {
+        return shape == RegionShape.UNION ? points.size() / 2 : 0;
+    }
+    
+    /**
+     * Get first position
+     * @return Copy of position 1, or null if not set
+     */
+    public Location getPos1() {
+        return pos1 != null ? pos1.clone() : null;
     }
     
     /**
      * Get second position
-     * @return Position 2
+     * @return Copy of position 2, or null if not set
      */
     public Location getPos2() {
-        return pos2;
+        return pos2 != null ? pos2.clone() : null;
+    }
+    
+    /**
+     * Create a snapshot with another shape. Polygon vertices are cleared.
+     * @param shape Shape
+     * @return New selection
+     */
+    public Selection withShape(RegionShape shape) {
+        return new Selection(pos1, pos2, shape, Collections.emptyList());
     }
     
     /**
-     * Set second position
-     * @param pos2 Position 2
+     * Create a snapshot with another first position. In polygon mode this starts a new polygon,
+     * in union mode it starts the next box.
+     * @param location Position 1
+     * @return New selection
      */
-    public void setPos2(Location pos2) {
-        this.pos2 = pos2.clone();
+    public Selection withPos1(Location location) {
+        return new Selection(location.clone(), pos2, shape, shape == RegionShape.UNION ? points : Collections.emptyList());
+    }
+    
+    /**
+     * Create a snapshot with another second position. In polygon mode this adds a vertex,
+     * in union mode it adds the box between pos1 and this position.
+     * @param location Position 2
+     * @return New selection
+     */
+    public Selection withPos2(Location location) {
+        Location point = location.clone();
+        if (shape == RegionShape.UNION) {
+            return withUnionBox(point);
+        }
+        if (shape != RegionShape.POLYGON) {
+            return new Selection(pos1, point, shape, points);
+        }
+        
+        // A vertex in another world starts over without pos1
+        Location first = pos1;
+        List<Location> vertices = new ArrayList<>();
+        if (first != null && !first.getWorld().equals(point.getWorld())) {
+            first = null;
+        } else {
+            vertices.addAll(this.points);
+        }
+        vertices.add(point);
+        return new Selection(first, point, shape, Collections.unmodifiableList(vertices));
+    }
+    
+    /**
+     * Add the box between pos1 and a corner to the union
+     */
+    private Selection withUnionBox(Location corner) {
+        if (pos1 == null || !pos1.getWorld().equals(corner.getWorld())) {
+            return new Selection(pos1, corner, shape, points);
+        }
+        
+        // A box in another world starts a new union
+        List<Location> boxes = new ArrayList<>();
+        if (!points.isEmpty() && points.get(0).getWorld().equals(corner.getWorld())) {
+            boxes.addAll(points);
+        }
+        boxes.add(pos1);
+        boxes.add(corner);
+        return new Selection(pos1, corner, shape, Collections.unmodifiableList(boxes));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package id.nusawedit.selection;
+
+import java.util.UUID;
+
+/**
+ * Internal notification that a player's selection snapshot was replaced
+ */
+public class SelectionChangeEvent {
+    
+    /**
+     * Kind of selection change
+     */
+    public enum Type {
+        // The selected area changed within the same world
+        CHANGED,
+        // The selection no longer covers a complete area
+        CLEARED,
+        // The selection moved to another world
+        WORLD_CHANGED
+    }
+    
+    private final UUID playerId;
+    private final Type type;
+    private final Selection oldSelection;
+    private final Selection newSelection;
+    
+    public SelectionChangeEvent(UUID playerId, Type type, Selection oldSelection, Selection newSelection) {
+        this.playerId = playerId;
+        this.type = type;
+        this.oldSelection = oldSelection;
+        this.newSelection = newSelection;
+    }
+    
+    /**
+     * Get the player whose selection changed
+     * @return Player UUID
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * Get the kind of change
+     * @return Change type
+     */
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * Get the snapshot before the change
+     * @return Old selection, never null
+     */
+    public Selection getOldSelection() {
+        return oldSelection;
+    }
+    
+    /**
+     * Get the snapshot after the change
+     * @return New selection, never null
+     */
+    public Selection getNewSelection() {
+        return newSelection;
+    }
+    
+    /**
+     * Get the bounds before the change
+     * @return Old region, or null if the old selection was incomplete
+     */
+    public Region getOldRegion() {
+        return oldSelection.getRegion();
+    }
+    
+    /**
+     * Get the bounds after the change
+     * @return New region, or null if the new selection is incomplete
+     */
+    public Region getNewRegion() {
+        return newSelection.getRegion();
+    }
+}
@@ -0,0 +1,15 @@
+package id.nusawedit.selection;
+
+/**
+ * Receives selection changes from {@link SelectionManager}.
+ * Called on the thread that changed the selection, normally the main thread.
+ */
+@FunctionalInterface
+public interface SelectionListener {
+    
+    /**
+     * Handle a selection change
+     * @param event Change details
+     */
+    void onSelectionChange(SelectionChangeEvent event);
+}
@@ -2,9 +2,12 @@ package id.nusawedit.selection;
 
 import id.nusawedit.Plugin;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -20,7 +23,12 @@ import org.bukkit.persistence.PersistentDataType;
  */
 public class SelectionManager {
     private final Plugin plugin;
-    private final Map<UUID, Selection> playerSelections = new HashMap<>();
+    
+    // Latest selection snapshot per player; replaced on every change so readers on any thread see a consistent state
+    private final Map<UUID, Selection> playerSelections = new ConcurrentHashMap<>();
+    
+    // Subscribers notified whenever a selection snapshot is replaced
+    private final List<SelectionListener> listeners = new CopyOnWriteArrayList<>();
     private final NamespacedKey wandKey;
     private final NamespacedKey usesKey;
     
@@ -31,12 +39,79 @@ public class SelectionManager {
     }
     
     /**
-     * Get or create a selection for a player
+     * Get the current selection snapshot of a player. Safe to call from any thread.
      * @param player Player
-     * @return Selection
+     * @return Selection, or {@link Selection#EMPTY} if the player has none
      */
     public Selection getSelection(Player player) {
-        return playerSelections.computeIfAbsent(player.getUniqueId(), k -> new Selection());
+        return playerSelections.getOrDefault(player.getUniqueId(), Selection.EMPTY);
+    }
+    
+    /**
+     * Replace a player's selection with an updated snapshot
+     * @param player Player
+     * @param update Function creating the new snapshot from the current one
+     * @return New selection
+     */
+    private Selection updateSelection(Player player, UnaryOperator<Selection> update) {
+        Selection[] previous = new Selection[1];
+        Selection updated = playerSelections.compute(player.getUniqueId(), (id, current) -> {
+            previous[0] = current != null ? current : Selection.EMPTY;
+            return update.apply(previous[0]);
+        });
+        
+        publish(player.getUniqueId(), previous[0], updated);
+        return updated;
+    }
+    
+    /**
+     * Remove a player's selection, e.g. when they leave
+     * @param player Player
+     */
+    public void clearSelection(Player player) {
+        Selection removed = playerSelections.remove(player.getUniqueId());
+        if (removed != null) {
+            publish(player.getUniqueId(), removed, Selection.EMPTY);
+        }
+    }
+    
+    /**
+     * Subscribe to selection changes
+     * @param listener Listener
+     */
+    public void addListener(SelectionListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Unsubscribe from selection changes
+     * @param listener Listener
+     */
+    public void removeListener(SelectionListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Notify listeners that a selection snapshot was replaced
+     */
+    private void publish(UUID playerId, Selection oldSelection, Selection newSelection) {
+        SelectionChangeEvent.Type type;
+        if (!newSelection.isComplete()) {
+            if (!oldSelection.isComplete()) {
+                // Nothing was or is selected, so nothing derived can be stale
+                return;
+            }
+            type = SelectionChangeEvent.Type.CLEARED;
+        } else if (oldSelection.isComplete() && !oldSelection.getWorld().equals(newSelection.getWorld())) {
+            type = SelectionChangeEvent.Type.WORLD_CHANGED;
+        } else {
+            type = SelectionChangeEvent.Type.CHANGED;
+        }
+        
+        SelectionChangeEvent event = new SelectionChangeEvent(playerId, type, oldSelection, newSelection);
+        for (SelectionListener listener : listeners) {
+            listener.onSelectionChange(event);
+        }
     }
     
     /**
@@ -54,7 +129,7 @@ public class SelectionManager {
      * @param player Player
      * @return Volume in blocks, or -1 if selection incomplete
      */
-    public int calculateSelectionVolume(Player player) {
+    public long calculateSelectionVolume(Player player) {
         Selection selection = playerSelections.get(player.getUniqueId());
         if (selection == null || !selection.isComplete()) {
             return -1;
@@ -68,8 +143,7 @@ public class SelectionManager {
      * @param location Location
      */
     public void setFirstPosition(Player player, Location location) {
-        Selection selection = getSelection(player);
-        selection.setPos1(location);
+        updateSelection(player, selection -> selection.withPos1(location));
         player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.position-1-set", formatLocation(location)));
     }
     
@@ -79,9 +153,16 @@ public class SelectionManager {
      * @param location Location
      */
     public void setSecondPosition(Player player, Location location) {
-        Selection selection = getSelection(player);
-        selection.setPos2(location);
-        player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.position-2-set", formatLocation(location)));
+        Selection selection = updateSelection(player, current -> current.withPos2(location));
+        if (selection.getShape() == RegionShape.POLYGON) {
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.polygon-point-added",
+                    selection.getPolygonPointCount(), formatLocation(location)));
+        } else if (selection.getShape() == RegionShape.UNION) {
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.union-box-added",
+                    selection.getUnionBoxCount(), formatLocation(location)));
+        } else {
+            player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.position-2-set", formatLocation(location)));
+        }
         
         // If selection is now complete, show volume info
         if (selection.isComplete()) {
@@ -89,6 +170,16 @@ public class SelectionManager {
         }
     }
     
+    /**
+     * Change the shape of a player's selection
+     * @param player Player
+     * @param shape New shape
+     */
+    public void setShape(Player player, RegionShape shape) {
+        updateSelection(player, selection -> selection.withShape(shape));
+        player.sendMessage(plugin.getMessageManager().getFormattedMessage("selection.shape-set", shape.name().toLowerCase()));
+    }
+    
     /**
      * Create a selection wand with limited uses
      * @param uses Number of uses
@@ -0,0 +1,33 @@
+package id.nusawedit.selection;
+
+import org.bukkit.World;
+
+/**
+ * Ball-shaped region around a center block
+ */
+public class SphereRegion extends AbstractRegion {
+    private final int centerX, centerY, centerZ;
+    private final double radiusSquared;
+    
+    public SphereRegion(World world, int centerX, int centerY, int centerZ, double radius) {
+        super(world, centerX - (int) radius, centerY - (int) radius, centerZ - (int) radius,
+                centerX + (int) radius, centerY + (int) radius, centerZ + (int) radius);
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.radiusSquared = radius * radius;
+    }
+    
+    @Override
+    protected long columnSpan(int x, int z) {
+        int dx = x - centerX;
+        int dz = z - centerZ;
+        double remaining = radiusSquared - (double) dx * dx - (double) dz * dz;
+        if (remaining < 0) {
+            return NO_SPAN;
+        }
+        
+        int extent = (int) Math.sqrt(remaining);
+        return span(centerY - extent, centerY + extent);
+    }
+}
@@ -0,0 +1,242 @@
+package id.nusawedit.selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.World;
+
+/**
+ * Union of several cuboids in one world.
+ *
+ * The cuboids are indexed by the chunks they overlap. Iteration walks the
+ * union chunk by chunk and merges the Y intervals of all cuboids covering a
+ * column, so blocks where cuboids overlap are visited and counted once.
+ */
+public class UnionRegion implements Region {
+    private final World world;
+    private final CuboidRegion[] parts;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    
+    // Touched chunks in iteration order, with the indexes of the parts overlapping each
+    private final long[] chunkKeys;
+    private final Map<Long, int[]> chunkParts = new HashMap<>();
+    private final Set<Long> chunks;
+    
+    private volatile long volume = -1;
+    
+    /**
+     * Create a union region
+     * @param world World
+     * @param cuboids Cuboids in the world; empty ones are ignored
+     */
+    public UnionRegion(World world, List<CuboidRegion> cuboids) {
+        this.world = world;
+        
+        List<CuboidRegion> nonEmpty = new ArrayList<>();
+        for (CuboidRegion cuboid : cuboids) {
+            if (cuboid.minY <= cuboid.maxY) {
+                nonEmpty.add(cuboid);
+            }
+        }
+        this.parts = nonEmpty.toArray(new CuboidRegion[0]);
+        
+        int lowX = Integer.MAX_VALUE, lowY = Integer.MAX_VALUE, lowZ = Integer.MAX_VALUE;
+        int highX = Integer.MIN_VALUE, highY = Integer.MIN_VALUE, highZ = Integer.MIN_VALUE;
+        Map<Long, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < parts.length; i++) {
+            CuboidRegion part = parts[i];
+            lowX = Math.min(lowX, part.minX);
+            lowY = Math.min(lowY, part.minY);
+            lowZ = Math.min(lowZ, part.minZ);
+            highX = Math.max(highX, part.maxX);
+            highY = Math.max(highY, part.maxY);
+            highZ = Math.max(highZ, part.maxZ);
+            
+            for (long chunk : part.getChunks()) {
+                index.computeIfAbsent(chunk, k -> new ArrayList<>(2)).add(i);
+            }
+        }
+        
+        this.minX = lowX;
+        this.minY = lowY;
+        this.minZ = lowZ;
+        this.maxX = highX;
+        this.maxY = highY;
+        this.maxZ = highZ;
+        
+        this.chunkKeys = new long[index.size()];
+        int next = 0;
+        for (Map.Entry<Long, List<Integer>> entry : index.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            chunkParts.put(entry.getKey(), array);
+            chunkKeys[next++] = entry.getKey();
+        }
+        Arrays.sort(chunkKeys);
+        this.chunks = Collections.unmodifiableSet(chunkParts.keySet());
+    }
+    
+    /**
+     * Receives the merged Y intervals of the union, column by column
+     */
+    @FunctionalInterface
+    private interface SpanVisitor {
+        void visit(int x, int z, int low, int high);
+    }
+    
+    /**
+     * Walk the union chunk by chunk, reporting each merged Y interval once
+     */
+    private void forEachSpan(SpanVisitor visitor) {
+        int[] lows = new int[parts.length];
+        int[] highs = new int[parts.length];
+        
+        for (long chunk : chunkKeys) {
+            int[] candidates = chunkParts.get(chunk);
+            int chunkX = (int) (chunk >> 32);
+            int chunkZ = (int) chunk;
+            int startX = Math.max(minX, chunkX << 4);
+            int endX = Math.min(maxX, (chunkX << 4) + 15);
+            int startZ = Math.max(minZ, chunkZ << 4);
+            int endZ = Math.min(maxZ, (chunkZ << 4) + 15);
+            
+            for (int x = startX; x <= endX; x++) {
+                for (int z = startZ; z <= endZ; z++) {
+                    // Collect the intervals covering this column, sorted by low end
+                    int count = 0;
+                    for (int id : candidates) {
+                        CuboidRegion part = parts[id];
+                        if (x < part.minX || x > part.maxX || z < part.minZ || z > part.maxZ) {
+                            continue;
+                        }
+                        
+                        int slot = count++;
+                        while (slot > 0 && lows[slot - 1] > part.minY) {
+                            lows[slot] = lows[slot - 1];
+                            highs[slot] = highs[slot - 1];
+                            slot--;
+                        }
+                        lows[slot] = part.minY;
+                        highs[slot] = part.maxY;
+                    }
+                    
+                    if (count == 0) {
+                        continue;
+                    }
+                    
+                    // Merge overlapping or touching intervals
+                    int low = lows[0];
+                    int high = highs[0];
+                    for (int i = 1; i < count; i++) {
+                        if (lows[i] <= high + 1) {
+                            high = Math.max(high, highs[i]);
+                        } else {
+                            visitor.visit(x, z, low, high);
+                            low = lows[i];
+                            high = highs[i];
+                        }
+                    }
+                    visitor.visit(x, z, low, high);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void forEachBlock(BlockVisitor visitor) {
+        forEachSpan((x, z, low, high) -> {
+            for (int y = low; y <= high; y++) {
+                visitor.visit(x, y, z);
+            }
+        });
+    }
+    
+    @Override
+    public long getVolume() {
+        if (volume < 0) {
+            long[] total = {0};
+            forEachSpan((x, z, low, high) -> total[0] += high - low + 1);
+            volume = total[0];
+        }
+        return volume;
+    }
+    
+    @Override
+    public boolean contains(int x, int y, int z) {
+        int[] candidates = chunkParts.get(Region.chunkKey(x >> 4, z >> 4));
+        if (candidates == null) {
+            return false;
+        }
+        
+        for (int id : candidates) {
+            if (parts[id].contains(x, y, z)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public Set<Long> getChunks() {
+        return chunks;
+    }
+    
+    /**
+     * Get the number of cuboids in the union
+     * @return Cuboid count
+     */
+    public int getPartCount() {
+        return parts.length;
+    }
+    
+    /**
+     * Get the cuboids making up the union
+     * @return Cuboids
+     */
+    public List<CuboidRegion> getParts() {
+        return Collections.unmodifiableList(Arrays.asList(parts));
+    }
+    
+    @Override
+    public World getWorld() {
+        return world;
+    }
+    
+    @Override
+    public int getMinX() {
+        return minX;
+    }
+    
+    @Override
+    public int getMinY() {
+        return minY;
+    }
+    
+    @Override
+    public int getMinZ() {
+        return minZ;
+    }
+    
+    @Override
+    public int getMaxX() {
+        return maxX;
+    }
+    
+    @Override
+    public int getMaxY() {
+        return maxY;
+    }
+    
+    @Override
+    public int getMaxZ() {
+        return maxZ;
+    }
+}
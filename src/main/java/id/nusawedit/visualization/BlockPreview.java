@@ -1,22 +1,45 @@
 package id.nusawedit.visualization;
 
+import id.nusawedit.operations.BlockDataPool;
+import id.nusawedit.selection.BlockVisitor;
+import id.nusawedit.selection.Region;
 import id.nusawedit.selection.Selection;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 /**
- * Represents a preview of a block operation
+ * Represents a preview of a block operation.
+ *
+ * Affected blocks are stored as one bitset per chunk, indexed
+ * by height above the selection bottom and position inside the chunk,
+ * instead of a Location per block.
  */
 public class BlockPreview {
     private final Selection selection;
     private final Material material;
+    private final BlockData targetData;
     private final boolean isReplace;
     private final Material fromMaterial;
-    private final Set<Location> blocks = new HashSet<>();
+    private final PreviewMode mode;
+    
+    // Chunk key -> affected blocks in that chunk, in chunk order
+    private final Map<Long, BitSet> chunks = new TreeMap<>();
+    private final int minY;
+    private int blockCount;
+    
+    // Change stamp of the world state the block set was computed from
+    private long changeStamp;
+    
+    private final long createdAt = System.currentTimeMillis();
     
     /**
      * Create a new block preview
@@ -24,28 +47,163 @@ public class BlockPreview {
      * @param material Target material
      * @param isReplace Whether this is a replace operation
      * @param fromMaterial Source material for replace operation
+     * @param mode How the preview is shown
      */
-    public BlockPreview(Selection selection, Material material, boolean isReplace, Material fromMaterial) {
+    public BlockPreview(Selection selection, Material material, boolean isReplace, Material fromMaterial, PreviewMode mode) {
         this.selection = selection;
         this.material = material;
+        this.targetData = BlockDataPool.of(material);
         this.isReplace = isReplace;
         this.fromMaterial = fromMaterial;
+        this.mode = mode;
+        this.minY = selection.getMinY();
     }
     
     /**
      * Add a block to the preview
-     * @param location Block location
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     */
+    public void addBlock(int x, int y, int z) {
+        BitSet bits = chunks.computeIfAbsent(Region.chunkKey(x >> 4, z >> 4), k -> new BitSet());
+        int index = bitIndex(x, y, z);
+        if (!bits.get(index)) {
+            bits.set(index);
+            blockCount++;
+        }
+    }
+    
+    /**
+     * Check if a block is part of the preview
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @return true if the block is affected
+     */
+    public boolean contains(int x, int y, int z) {
+        BitSet bits = chunks.get(Region.chunkKey(x >> 4, z >> 4));
+        return bits != null && y >= minY && bits.get(bitIndex(x, y, z));
+    }
+    
+    /**
+     * Drop the affected blocks of one chunk, e.g. before rescanning it
+     * @param chunkKey Chunk key, see {@link Region#chunkKey(int, int)}
+     */
+    public void clearChunk(long chunkKey) {
+        BitSet bits = chunks.remove(chunkKey);
+        if (bits != null) {
+            blockCount -= bits.cardinality();
+        }
+    }
+    
+    /**
+     * Visit every affected block, chunk by chunk
+     * @param visitor Visitor called with the coordinates of each block
+     */
+    public void forEachBlock(BlockVisitor visitor) {
+        forEachSample(1, visitor);
+    }
+    
+    /**
+     * Visit every n-th affected block, e.g. to draw particles for a sample
+     * @param step Distance between visited blocks, 1 for all
+     * @param visitor Visitor called with the coordinates of each visited block
+     */
+    public void forEachSample(int step, BlockVisitor visitor) {
+        int skip = 0;
+        for (Map.Entry<Long, BitSet> entry : chunks.entrySet()) {
+            int baseX = (int) (entry.getKey() >> 32) << 4;
+            int baseZ = (int) (long) entry.getKey() << 4;
+            BitSet bits = entry.getValue();
+            
+            for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                skip = step - 1;
+                visitor.visit(baseX | (index & 15), minY + (index >>> 8), baseZ | ((index >>> 4) & 15));
+            }
+        }
+    }
+    
+    /**
+     * Visit the affected blocks of one chunk
+     * @param chunkKey Chunk key, see {@link Region#chunkKey(int, int)}
+     * @param visitor Visitor called with the coordinates of each block
      */
-    public void addBlock(Location location) {
-        blocks.add(location.clone());
+    public void forEachBlockInChunk(long chunkKey, BlockVisitor visitor) {
+        BitSet bits = chunks.get(chunkKey);
+        if (bits == null) {
+            return;
+        }
+        
+        int baseX = (int) (chunkKey >> 32) << 4;
+        int baseZ = (int) chunkKey << 4;
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+            visitor.visit(baseX | (index & 15), minY + (index >>> 8), baseZ | ((index >>> 4) & 15));
+        }
     }
     
     /**
-     * Get all blocks in this preview
-     * @return Set of locations
+     * Iterate over the affected blocks chunk by chunk, creating each location only when it is reached
+     * @param world World of the blocks
+     * @return Iterator over block locations
      */
-    public Set<Location> getBlocks() {
-        return blocks;
+    public Iterator<Location> iterator(World world) {
+        return new Iterator<Location>() {
+            private final Iterator<Map.Entry<Long, BitSet>> entries = chunks.entrySet().iterator();
+            private BitSet bits;
+            private int baseX;
+            private int baseZ;
+            private int index = advance(0);
+            
+            @Override
+            public boolean hasNext() {
+                return index >= 0;
+            }
+            
+            @Override
+            public Location next() {
+                if (index < 0) {
+                    throw new NoSuchElementException();
+                }
+                Location location = new Location(world, baseX | (index & 15), minY + (index >>> 8), baseZ | ((index >>> 4) & 15));
+                index = advance(index + 1);
+                return location;
+            }
+            
+            /**
+             * Find the next set bit, moving on to the next chunks if needed
+             */
+            private int advance(int from) {
+                int found = bits != null ? bits.nextSetBit(from) : -1;
+                while (found < 0 && entries.hasNext()) {
+                    Map.Entry<Long, BitSet> entry = entries.next();
+                    baseX = (int) (entry.getKey() >> 32) << 4;
+                    baseZ = (int) (long) entry.getKey() << 4;
+                    bits = entry.getValue();
+                    found = bits.nextSetBit(0);
+                }
+                return found;
+            }
+        };
+    }
+    
+    /**
+     * Get the keys of the chunks containing affected blocks
+     * @return Chunk keys, see {@link Region#chunkKey(int, int)}
+     */
+    public Iterable<Long> getChunkKeys() {
+        return chunks.keySet();
+    }
+    
+    /**
+     * Position of a block inside its chunk's bitset
+     */
+    private int bitIndex(int x, int y, int z) {
+        return ((y - minY) << 8) | ((z & 15) << 4) | (x & 15);
     }
     
     /**
@@ -56,6 +214,14 @@ public class BlockPreview {
         return material;
     }
     
+    /**
+     * Get the shared block state that will be placed
+     * @return Canonical target block data
+     */
+    public BlockData getTargetData() {
+        return targetData;
+    }
+    
     /**
      * Check if this is a replace operation
      * @return true if replace
@@ -72,6 +238,14 @@ public class BlockPreview {
         return fromMaterial;
     }
     
+    /**
+     * Get how the preview is shown
+     * @return Preview mode
+     */
+    public PreviewMode getMode() {
+        return mode;
+    }
+    
     /**
      * Get selection
      * @return Selection
@@ -80,11 +254,48 @@ public class BlockPreview {
         return selection;
     }
     
+    /**
+     * Get the change stamp the block set is up to date with
+     * @return Stamp from {@link ChunkChangeTracker}
+     */
+    long getChangeStamp() {
+        return changeStamp;
+    }
+    
+    /**
+     * Set the change stamp the block set is up to date with
+     * @param changeStamp Stamp from {@link ChunkChangeTracker}
+     */
+    void setChangeStamp(long changeStamp) {
+        this.changeStamp = changeStamp;
+    }
+    
+    /**
+     * Get when the preview was created
+     * @return Creation time in milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    /**
+     * Estimate the heap used by the affected block set
+     * @return Approximate size in bytes
+     */
+    public long estimateMemory() {
+        // Bitset words plus the bitset, map entry and boxed key around them
+        long bytes = 128;
+        for (BitSet bits : chunks.values()) {
+            bytes += bits.size() / 8 + 96;
+        }
+        return bytes;
+    }
+    
     /**
      * Get number of blocks in preview
      * @return Block count
      */
     public int getBlockCount() {
-        return blocks.size();
+        return blockCount;
     }
 }
\ No newline at end of file
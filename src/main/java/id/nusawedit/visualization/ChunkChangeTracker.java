@@ -0,0 +1,232 @@
+package id.nusawedit.visualization;
+
+import id.nusawedit.selection.Region;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPistonEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+
+/**
+ * Remembers when the chunks of previews last changed.
+ *
+ * Only chunks watched by a preview are tracked. Changes are picked up from block
+ * events and from the plugin's own operations, which report their writes through
+ * {@link #markChanged(Block)}. Writes by other plugins that fire no events are not
+ * seen, so executing a preview still rechecks every block it writes.
+ * Only used on the main thread.
+ */
+public class ChunkChangeTracker implements Listener {
+    // World UUID -> chunk key -> watched chunk
+    private final Map<UUID, Map<Long, WatchedChunk>> watched = new HashMap<>();
+    
+    // Increases with every recorded change
+    private long stamp;
+    
+    /**
+     * Start tracking chunks
+     * @param world World of the chunks
+     * @param chunkKeys Chunk keys, see {@link Region#chunkKey(int, int)}
+     * @return Current stamp; later changes are reported as changed since it
+     */
+    public long watch(World world, Set<Long> chunkKeys) {
+        Map<Long, WatchedChunk> chunks = watched.computeIfAbsent(world.getUID(), k -> new HashMap<>());
+        for (long key : chunkKeys) {
+            chunks.computeIfAbsent(key, k -> new WatchedChunk()).watchers++;
+        }
+        return stamp;
+    }
+    
+    /**
+     * Stop tracking chunks passed to {@link #watch(World, Set)} before
+     * @param world World of the chunks
+     * @param chunkKeys Chunk keys
+     */
+    public void unwatch(World world, Set<Long> chunkKeys) {
+        Map<Long, WatchedChunk> chunks = watched.get(world.getUID());
+        if (chunks == null) {
+            return;
+        }
+        for (long key : chunkKeys) {
+            WatchedChunk chunk = chunks.get(key);
+            if (chunk != null && --chunk.watchers <= 0) {
+                chunks.remove(key);
+            }
+        }
+        if (chunks.isEmpty()) {
+            watched.remove(world.getUID());
+        }
+    }
+    
+    /**
+     * Get the watched chunks that changed after a stamp
+     * @param world World of the chunks
+     * @param chunkKeys Chunk keys to check
+     * @param since Stamp returned by {@link #watch(World, Set)} or {@link #getStamp()}
+     * @return Keys of the changed chunks
+     */
+    public Set<Long> getChangedChunks(World world, Set<Long> chunkKeys, long since) {
+        Set<Long> changed = new HashSet<>();
+        Map<Long, WatchedChunk> chunks = watched.get(world.getUID());
+        if (chunks == null) {
+            return changed;
+        }
+        for (long key : chunkKeys) {
+            WatchedChunk chunk = chunks.get(key);
+            if (chunk != null && chunk.lastChange > since) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Get the current stamp
+     * @return Stamp of the last recorded change
+     */
+    public long getStamp() {
+        return stamp;
+    }
+    
+    /**
+     * Record that a block changed
+     * @param block Changed block
+     */
+    public void markChanged(Block block) {
+        if (watched.isEmpty()) {
+            return;
+        }
+        Map<Long, WatchedChunk> chunks = watched.get(block.getWorld().getUID());
+        if (chunks == null) {
+            return;
+        }
+        WatchedChunk chunk = chunks.get(Region.chunkKey(block.getX() >> 4, block.getZ() >> 4));
+        if (chunk != null) {
+            chunk.lastChange = ++stamp;
+        }
+    }
+    
+    private void markChanged(List<Block> blocks) {
+        for (Block block : blocks) {
+            markChanged(block);
+        }
+    }
+    
+    private void markMoved(BlockPistonEvent event, List<Block> blocks) {
+        // Moved blocks and the piston head end up one block further either way
+        BlockFace direction = event.getDirection();
+        markChanged(event.getBlock().getRelative(direction));
+        for (Block block : blocks) {
+            markChanged(block);
+            markChanged(block.getRelative(direction));
+            markChanged(block.getRelative(direction.getOppositeFace()));
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        // Also covers spreading blocks
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockGrow(BlockGrowEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        markChanged(event.getToBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        markChanged(event.getBlock());
+        markChanged(event.blockList());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        markChanged(event.blockList());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        markChanged(event.getBlock());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        markMoved(event, event.getBlocks());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        markMoved(event, event.getBlocks());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        for (BlockState state : event.getBlocks()) {
+            markChanged(state.getBlock());
+        }
+    }
+    
+    /**
+     * A tracked chunk
+     */
+    private static class WatchedChunk {
+        int watchers;
+        long lastChange;
+    }
+}
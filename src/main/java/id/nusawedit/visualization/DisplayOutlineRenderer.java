@@ -0,0 +1,302 @@
+package id.nusawedit.visualization;
+
+import id.nusawedit.Plugin;
+import id.nusawedit.operations.BlockDataPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.BlockDisplay;
+import org.bukkit.entity.Display;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Transformation;
+import org.joml.AxisAngle4f;
+import org.joml.Vector3f;
+
+/**
+ * Draws selection outlines with block display entities, thin scaled bars along the box edges.
+ *
+ * The entities are visible to their owner only. Edges are split at chunk borders and only
+ * the segments in loaded chunks near the owner are spawned, so drawing costs the same however
+ * large the selection is. Segments stay in place until the selection changes or the owner
+ * enters another chunk, and only discarded ones are respawned. Only used on the main thread.
+ */
+class DisplayOutlineRenderer {
+    private static final float EDGE_THICKNESS = 0.0625f;
+    private static final float VIEW_RANGE = 4.0f;
+    private static final BlockData EDGE_BLOCK = BlockDataPool.of(Material.YELLOW_CONCRETE);
+    
+    // Segments are only placed in chunks this close to the owner
+    private static final int RANGE_CHUNKS = 8;
+    
+    private static final int AXIS_X = 0;
+    private static final int AXIS_Y = 1;
+    private static final int AXIS_Z = 2;
+    
+    private final Plugin plugin;
+    private final Map<UUID, PlayerOutline> outlines = new HashMap<>();
+    
+    DisplayOutlineRenderer(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Make a player's display outline match their selection and position, keeping segments still in place
+     * @param player Owner of the outline
+     * @param outline Current selection outline
+     */
+    void update(Player player, SelectionOutline outline) {
+        UUID playerId = player.getUniqueId();
+        World world = outline.getWorld();
+        
+        // Nothing is near a player in another world
+        Location position = player.getLocation();
+        boolean inWorld = player.getWorld().equals(world);
+        int chunkX = inWorld ? position.getBlockX() >> 4 : Integer.MIN_VALUE;
+        int chunkZ = inWorld ? position.getBlockZ() >> 4 : Integer.MIN_VALUE;
+        
+        // Segments belong to the world they were spawned in
+        PlayerOutline current = outlines.get(playerId);
+        if (current != null && !current.world.equals(world)) {
+            current.removeAll();
+            current = null;
+        }
+        if (current == null) {
+            current = new PlayerOutline(world);
+            outlines.put(playerId, current);
+        } else if (current.version == outline.getVersion() && current.chunkX == chunkX && current.chunkZ == chunkZ
+                && current.complete && current.isValid()) {
+            return;
+        }
+        
+        Map<Segment, BlockDisplay> placed = new HashMap<>();
+        boolean complete = true;
+        if (inWorld) {
+            for (int i = 0; i < outline.getBoxCount(); i++) {
+                int[] box = outline.getBox(i);
+                
+                // Edges run along the outer faces of the boxed blocks
+                int minX = box[0];
+                int minY = box[1];
+                int minZ = box[2];
+                int maxX = box[3] + 1;
+                int maxY = box[4] + 1;
+                int maxZ = box[5] + 1;
+                
+                for (int y : new int[] {minY, maxY}) {
+                    for (int z : new int[] {minZ, maxZ}) {
+                        complete &= placeEdge(player, current, placed, chunkX, chunkZ, AXIS_X, minX, y, z, maxX - minX);
+                    }
+                }
+                for (int x : new int[] {minX, maxX}) {
+                    for (int z : new int[] {minZ, maxZ}) {
+                        complete &= placeEdge(player, current, placed, chunkX, chunkZ, AXIS_Y, x, minY, z, maxY - minY);
+                    }
+                }
+                for (int x : new int[] {minX, maxX}) {
+                    for (int y : new int[] {minY, maxY}) {
+                        complete &= placeEdge(player, current, placed, chunkX, chunkZ, AXIS_Z, x, y, minZ, maxZ - minZ);
+                    }
+                }
+            }
+        }
+        
+        // Whatever was not placed again is out of range or no longer part of the outline
+        current.removeAll();
+        current.segments = placed;
+        current.version = outline.getVersion();
+        current.chunkX = chunkX;
+        current.chunkZ = chunkZ;
+        current.complete = complete;
+    }
+    
+    /**
+     * Place the segments of one edge that lie near the owner, one per chunk it crosses
+     * @param current Segments placed so far, reused ones are taken out
+     * @param placed Segments placed in this update
+     * @param axis Axis the edge runs along
+     * @param x Edge start X
+     * @param y Edge start Y
+     * @param z Edge start Z
+     * @param length Edge length
+     * @return false if a segment was skipped because its chunk is not loaded
+     */
+    private boolean placeEdge(Player player, PlayerOutline current, Map<Segment, BlockDisplay> placed,
+            int chunkX, int chunkZ, int axis, int x, int y, int z, int length) {
+        World world = current.world;
+        int rangeMinX = (chunkX - RANGE_CHUNKS) << 4;
+        int rangeMaxX = (chunkX + RANGE_CHUNKS + 1) << 4;
+        int rangeMinZ = (chunkZ - RANGE_CHUNKS) << 4;
+        int rangeMaxZ = (chunkZ + RANGE_CHUNKS + 1) << 4;
+        
+        // Only the part of the edge inside the range is split, segment borders stay on chunk borders
+        int start = axis == AXIS_X ? x : axis == AXIS_Y ? y : z;
+        int end = start + length;
+        if (axis == AXIS_X) {
+            if (z < rangeMinZ || z > rangeMaxZ) {
+                return true;
+            }
+            start = Math.max(start, rangeMinX);
+            end = Math.min(end, rangeMaxX);
+        } else if (axis == AXIS_Z) {
+            if (x < rangeMinX || x > rangeMaxX) {
+                return true;
+            }
+            start = Math.max(start, rangeMinZ);
+            end = Math.min(end, rangeMaxZ);
+        } else if (x < rangeMinX || x > rangeMaxX || z < rangeMinZ || z > rangeMaxZ) {
+            return true;
+        }
+        
+        boolean complete = true;
+        while (start < end) {
+            int next = Math.min(end, Math.floorDiv(start, 16) * 16 + 16);
+            Segment segment = new Segment(axis,
+                    axis == AXIS_X ? start : x, axis == AXIS_Y ? start : y, axis == AXIS_Z ? start : z, next - start);
+            start = next;
+            
+            Location center = segment.getCenter(world);
+            if (!world.isChunkLoaded(center.getBlockX() >> 4, center.getBlockZ() >> 4)) {
+                complete = false;
+                continue;
+            }
+            
+            // Keep entities that are still there, replace the ones discarded with their chunk
+            BlockDisplay entity = current.segments.remove(segment);
+            if (entity != null && !entity.isValid()) {
+                entity.remove();
+                entity = null;
+            }
+            if (entity == null) {
+                entity = spawn(player, center, segment);
+            }
+            placed.put(segment, entity);
+        }
+        return complete;
+    }
+    
+    /**
+     * Spawn the entity of an edge segment
+     * @param center Segment center
+     */
+    private BlockDisplay spawn(Player player, Location center, Segment segment) {
+        // The entity sits at the segment center, the scaled block is shifted back by half its size
+        float scaleX = (segment.axis == AXIS_X ? segment.length : 0) + EDGE_THICKNESS;
+        float scaleY = (segment.axis == AXIS_Y ? segment.length : 0) + EDGE_THICKNESS;
+        float scaleZ = (segment.axis == AXIS_Z ? segment.length : 0) + EDGE_THICKNESS;
+        Transformation transformation = new Transformation(
+                new Vector3f(-scaleX / 2, -scaleY / 2, -scaleZ / 2), new AxisAngle4f(),
+                new Vector3f(scaleX, scaleY, scaleZ), new AxisAngle4f());
+        
+        BlockDisplay entity = center.getWorld().spawn(center, BlockDisplay.class, display -> {
+            display.setPersistent(false);
+            display.setVisibleByDefault(false);
+            display.setBlock(EDGE_BLOCK);
+            display.setBrightness(new Display.Brightness(15, 15));
+            display.setViewRange(VIEW_RANGE);
+            display.setTransformation(transformation);
+        });
+        player.showEntity(plugin, entity);
+        return entity;
+    }
+    
+    /**
+     * Remove a player's display outline
+     * @param playerId Owner of the outline
+     */
+    void remove(UUID playerId) {
+        PlayerOutline current = outlines.remove(playerId);
+        if (current != null) {
+            current.removeAll();
+        }
+    }
+    
+    /**
+     * Remove every display outline
+     */
+    void removeAll() {
+        for (PlayerOutline outline : outlines.values()) {
+            outline.removeAll();
+        }
+        outlines.clear();
+    }
+    
+    /**
+     * Part of a box edge within one chunk, from its start corner along one axis
+     */
+    private static class Segment {
+        final int axis;
+        final int x;
+        final int y;
+        final int z;
+        final int length;
+        
+        Segment(int axis, int x, int y, int z, int length) {
+            this.axis = axis;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.length = length;
+        }
+        
+        Location getCenter(World world) {
+            float half = length / 2f;
+            return new Location(world, x + (axis == AXIS_X ? half : 0), y + (axis == AXIS_Y ? half : 0),
+                    z + (axis == AXIS_Z ? half : 0));
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Segment)) {
+                return false;
+            }
+            Segment segment = (Segment) other;
+            return axis == segment.axis && x == segment.x && y == segment.y && z == segment.z
+                    && length == segment.length;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (((axis * 31 + x) * 31 + y) * 31 + z) * 31 + length;
+        }
+    }
+    
+    /**
+     * Edge segments of one player's outline
+     */
+    private static class PlayerOutline {
+        final World world;
+        Map<Segment, BlockDisplay> segments = new HashMap<>();
+        long version = -1;
+        int chunkX;
+        int chunkZ;
+        boolean complete;
+        
+        PlayerOutline(World world) {
+            this.world = world;
+        }
+        
+        /**
+         * Check that no entity was discarded, e.g. with an unloaded chunk
+         */
+        boolean isValid() {
+            for (BlockDisplay entity : segments.values()) {
+                if (!entity.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        void removeAll() {
+            for (BlockDisplay entity : segments.values()) {
+                entity.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package id.nusawedit.visualization;
+
+import id.nusawedit.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Shows previews as client-side block changes that only the previewing player sees.
+ *
+ * The changes are sent once, one packet per chunk section, and large previews are spread
+ * over several ticks. Sent states are created from block data rather than snapshotted
+ * from the world. Only used on the main thread.
+ */
+public class GhostBlockRenderer {
+    // Block changes sent to one player per tick
+    private static final int BLOCKS_PER_TICK = 4096;
+    
+    private final Plugin plugin;
+    
+    // Sends still in progress, a new send for the same player replaces the old one
+    private final Map<UUID, BukkitTask> sends = new HashMap<>();
+    
+    public GhostBlockRenderer(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Show the preview's target blocks to the player
+     * @param player Previewing player
+     * @param preview Preview
+     */
+    public void show(Player player, BlockPreview preview) {
+        send(player, preview, preview.getTargetData());
+    }
+    
+    /**
+     * Restore the player's view of the real blocks
+     * @param player Previewing player
+     * @param preview Preview that was shown
+     */
+    public void revert(Player player, BlockPreview preview) {
+        send(player, preview, null);
+    }
+    
+    /**
+     * Send a block change for every preview block
+     * @param data Block data to show, or null for the real blocks
+     */
+    private void send(Player player, BlockPreview preview, BlockData data) {
+        BlockState target = data != null ? data.createBlockState() : null;
+        UUID playerId = player.getUniqueId();
+        BukkitTask running = sends.remove(playerId);
+        if (running != null) {
+            running.cancel();
+        }
+        
+        World world = preview.getSelection().getWorld();
+        if (!player.isOnline() || !player.getWorld().equals(world)) {
+            return;
+        }
+        
+        List<Long> chunkKeys = new ArrayList<>();
+        preview.getChunkKeys().forEach(chunkKeys::add);
+        Location location = new Location(world, 0, 0, 0);
+        
+        // Nothing can be scheduled while disabling, so the real blocks are restored at once
+        if (!plugin.isEnabled()) {
+            for (long chunkKey : chunkKeys) {
+                sendChunk(player, preview, chunkKey, location, target);
+            }
+            return;
+        }
+        
+        sends.put(playerId, Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            private int next = 0;
+            
+            @Override
+            public void run() {
+                boolean done = next >= chunkKeys.size() || !player.isOnline() || !player.getWorld().equals(world);
+                int sent = 0;
+                while (!done && sent < BLOCKS_PER_TICK) {
+                    sent += sendChunk(player, preview, chunkKeys.get(next++), location, target);
+                    done = next >= chunkKeys.size();
+                }
+                
+                if (done) {
+                    BukkitTask self = sends.remove(playerId);
+                    if (self != null) {
+                        self.cancel();
+                    }
+                }
+            }
+        }, 0L, 1L));
+    }
+    
+    /**
+     * Send the changes of the preview blocks in one chunk, one packet per section
+     * @param location Location reused for every block
+     * @param target State to show, or null for the real blocks
+     * @return Number of blocks sent
+     */
+    private int sendChunk(Player player, BlockPreview preview, long chunkKey, Location location, BlockState target) {
+        World world = location.getWorld();
+        List<BlockState> batch = new ArrayList<>();
+        int[] section = {Integer.MIN_VALUE};
+        int[] sent = {0};
+        preview.forEachBlockInChunk(chunkKey, (x, y, z) -> {
+            // Blocks come bottom to top, so each section's blocks arrive together
+            int sectionY = y >> 4;
+            if (sectionY != section[0] && !batch.isEmpty()) {
+                player.sendBlockChanges(batch);
+                batch.clear();
+            }
+            section[0] = sectionY;
+            
+            location.setX(x);
+            location.setY(y);
+            location.setZ(z);
+            BlockState state = target != null ? target : world.getBlockData(x, y, z).createBlockState();
+            batch.add(state.copy(location));
+            sent[0]++;
+        });
+        
+        if (!batch.isEmpty()) {
+            player.sendBlockChanges(batch);
+        }
+        return sent[0];
+    }
+}
@@ -0,0 +1,25 @@
+package id.nusawedit.visualization;
+
+/**
+ * How selection outlines are drawn
+ */
+public enum OutlineMode {
+    // Dust particles along the edges, refreshed periodically
+    PARTICLES,
+    // Scaled block display entities, one per edge, visible to the owner only
+    DISPLAY;
+    
+    /**
+     * Find a mode by name, ignoring case
+     * @param name Mode name
+     * @return Mode, or null if unknown
+     */
+    public static OutlineMode fromName(String name) {
+        for (OutlineMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
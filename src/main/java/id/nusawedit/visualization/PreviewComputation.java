@@ -0,0 +1,100 @@
+package id.nusawedit.visualization;
+
+import id.nusawedit.config.ConfigManager;
+import id.nusawedit.selection.Region;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Computes the blocks affected by a preview away from the main thread.
+ *
+ * The chunk snapshots of the selection are captured on the main thread
+ * when the computation is created. {@link #compute()} only reads those
+ * snapshots, so it can run on a worker while the server keeps ticking.
+ */
+class PreviewComputation {
+    private final BlockPreview preview;
+    private final ConfigManager config;
+    private final Map<Long, ChunkSnapshot> snapshots = new HashMap<>();
+    private volatile boolean cancelled;
+    
+    /**
+     * Capture the chunks of a preview's selection, must be called on the main thread
+     * @param preview Empty preview to fill
+     * @param config Config used for the blacklist
+     */
+    PreviewComputation(BlockPreview preview, ConfigManager config) {
+        this.preview = preview;
+        this.config = config;
+        
+        World world = preview.getSelection().getWorld();
+        for (long key : preview.getSelection().getRegion().getChunks()) {
+            int chunkX = (int) (key >> 32);
+            int chunkZ = (int) key;
+            snapshots.put(key, world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+        }
+    }
+    
+    /**
+     * Fill the preview from the captured snapshots
+     * @return true if the computation finished, false if it was cancelled
+     */
+    boolean compute() {
+        boolean isReplace = preview.isReplace();
+        Material fromMaterial = preview.getFromMaterial();
+        
+        // Consecutive blocks are mostly in the same chunk
+        long[] lastKey = {Long.MIN_VALUE};
+        ChunkSnapshot[] lastSnapshot = {null};
+        
+        try {
+            preview.getSelection().getRegion().forEachBlock((x, y, z) -> {
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                
+                long key = Region.chunkKey(x >> 4, z >> 4);
+                if (key != lastKey[0]) {
+                    lastKey[0] = key;
+                    lastSnapshot[0] = snapshots.get(key);
+                }
+                Material type = lastSnapshot[0].getBlockType(x & 15, y, z & 15);
+                
+                // Skip blacklisted blocks
+                if (config.isBlacklisted(type)) {
+                    return;
+                }
+                
+                if (!isReplace || type == fromMaterial) {
+                    preview.addBlock(x, y, z);
+                }
+            });
+        } catch (CancellationException e) {
+            return false;
+        } finally {
+            snapshots.clear();
+        }
+        return !cancelled;
+    }
+    
+    /**
+     * Stop the computation, the preview will not be shown
+     */
+    void cancel() {
+        cancelled = true;
+    }
+    
+    /**
+     * Get the preview being computed
+     * @return Block preview
+     */
+    BlockPreview getPreview() {
+        return preview;
+    }
+}
@@ -0,0 +1,25 @@
+package id.nusawedit.visualization;
+
+/**
+ * How a block preview is shown to the player
+ */
+public enum PreviewMode {
+    // Dust particles at a sample of the affected blocks, refreshed periodically
+    PARTICLES,
+    // Fake block changes sent once to the previewing player only
+    GHOST;
+    
+    /**
+     * Find a mode by name, ignoring case
+     * @param name Mode name
+     * @return Mode, or null if unknown
+     */
+    public static PreviewMode fromName(String name) {
+        for (PreviewMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
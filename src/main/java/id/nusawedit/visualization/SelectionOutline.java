@@ -0,0 +1,195 @@
+package id.nusawedit.visualization;
+
+import id.nusawedit.selection.CuboidRegion;
+import id.nusawedit.selection.Region;
+import id.nusawedit.selection.Selection;
+import id.nusawedit.selection.UnionRegion;
+
+import java.util.Arrays;
+
+import org.bukkit.World;
+
+/**
+ * Particle positions along the edges of a selection, computed once per selection
+ * version. Points are stored as block-center coordinates in a flat
+ * {x, y, z, x, y, z, ...} array so drawing allocates nothing.
+ * The outlined boxes are kept as well, for outlines drawn with display entities.
+ */
+public final class SelectionOutline {
+    private final long version;
+    private final World world;
+    private final double[] coords;
+    
+    // {minX, minY, minZ, maxX, maxY, maxZ} per outlined box
+    private final int[] boxes;
+    
+    private SelectionOutline(long version, World world, double[] coords, int[] boxes) {
+        this.version = version;
+        this.world = world;
+        this.coords = coords;
+        this.boxes = boxes;
+    }
+    
+    /**
+     * Compute the outline of a complete selection
+     * @param selection Selection
+     * @return Outline
+     */
+    public static SelectionOutline of(Selection selection) {
+        Builder builder = new Builder();
+        Region region = selection.getRegion();
+        
+        if (region instanceof UnionRegion) {
+            // Outline every box of the union
+            for (CuboidRegion part : ((UnionRegion) region).getParts()) {
+                builder.addBox(part);
+            }
+        } else {
+            builder.addBox(region);
+        }
+        
+        return new SelectionOutline(selection.getVersion(), region.getWorld(), builder.build(), builder.buildBoxes());
+    }
+    
+    /**
+     * Get the selection version this outline was computed for
+     * @return Selection version
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Get the world of the selection
+     * @return World
+     */
+    public World getWorld() {
+        return world;
+    }
+    
+    /**
+     * Get the number of points
+     * @return Point count
+     */
+    public int getPointCount() {
+        return coords.length / 3;
+    }
+    
+    /**
+     * Get X of a point
+     * @param index Point index
+     * @return X at the block center
+     */
+    public double getX(int index) {
+        return coords[index * 3];
+    }
+    
+    /**
+     * Get Y of a point
+     * @param index Point index
+     * @return Y at the block center
+     */
+    public double getY(int index) {
+        return coords[index * 3 + 1];
+    }
+    
+    /**
+     * Get Z of a point
+     * @param index Point index
+     * @return Z at the block center
+     */
+    public double getZ(int index) {
+        return coords[index * 3 + 2];
+    }
+    
+    /**
+     * Get the number of outlined boxes
+     * @return Box count, more than one for union selections
+     */
+    public int getBoxCount() {
+        return boxes.length / 6;
+    }
+    
+    /**
+     * Get the block bounds of an outlined box
+     * @param index Box index
+     * @return {minX, minY, minZ, maxX, maxY, maxZ}
+     */
+    public int[] getBox(int index) {
+        return Arrays.copyOfRange(boxes, index * 6, index * 6 + 6);
+    }
+    
+    /**
+     * Growable coordinate buffer
+     */
+    private static class Builder {
+        private double[] data = new double[96];
+        private int size;
+        private int[] boxes = new int[6];
+        private int boxSize;
+        
+        /**
+         * Add the 12 edges of a region's bounding box
+         */
+        void addBox(Region box) {
+            int minX = box.getMinX();
+            int minY = box.getMinY();
+            int minZ = box.getMinZ();
+            int maxX = box.getMaxX();
+            int maxY = box.getMaxY();
+            int maxZ = box.getMaxZ();
+            
+            if (boxSize + 6 > boxes.length) {
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+            }
+            boxes[boxSize++] = minX;
+            boxes[boxSize++] = minY;
+            boxes[boxSize++] = minZ;
+            boxes[boxSize++] = maxX;
+            boxes[boxSize++] = maxY;
+            boxes[boxSize++] = maxZ;
+            
+            // How many blocks apart to place particles (higher = less particles)
+            int spacing = Math.max(1, (int) Math.ceil((maxX - minX + maxY - minY + maxZ - minZ) / 100.0));
+            
+            // X edges include the corners, the others start and end one step inside
+            for (int x = minX; x <= maxX; x += spacing) {
+                add(x, minY, minZ);
+                add(x, minY, maxZ);
+                add(x, maxY, minZ);
+                add(x, maxY, maxZ);
+            }
+            
+            for (int y = minY + spacing; y < maxY; y += spacing) {
+                add(minX, y, minZ);
+                add(minX, y, maxZ);
+                add(maxX, y, minZ);
+                add(maxX, y, maxZ);
+            }
+            
+            for (int z = minZ + spacing; z < maxZ; z += spacing) {
+                add(minX, minY, z);
+                add(minX, maxY, z);
+                add(maxX, minY, z);
+                add(maxX, maxY, z);
+            }
+        }
+        
+        void add(int x, int y, int z) {
+            if (size + 3 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = x + 0.5;
+            data[size++] = y + 0.5;
+            data[size++] = z + 0.5;
+        }
+        
+        double[] build() {
+            return Arrays.copyOf(data, size);
+        }
+        
+        int[] buildBoxes() {
+            return Arrays.copyOf(boxes, boxSize);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package id.nusawedit.visualization;
 
 import id.nusawedit.Plugin;
+import id.nusawedit.selection.Region;
 import id.nusawedit.selection.Selection;
+import id.nusawedit.selection.SelectionChangeEvent;
+import id.nusawedit.selection.SelectionListener;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Color;
@@ -15,9 +24,12 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Particle;
 import org.bukkit.Particle.DustOptions;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
 import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
 
 /**
  * Manages visualization of selections and operation previews
@@ -25,20 +37,126 @@ import org.bukkit.scheduler.BukkitTask;
 public class VisualizationManager {
     private final Plugin plugin;
     private BukkitTask particleTask;
+    private BukkitTask expiryTask;
     
-    // Players who have visualization enabled
-    private final Set<UUID> visualizationEnabled = new HashSet<>();
+    // Players who have visualization enabled, each refreshed on its own tick of the period
+    private final VisualizationScheduler scheduler = new VisualizationScheduler(REFRESH_TICKS);
     
     // Track active previews
-    private final Map<UUID, BlockPreview> activePreview = new HashMap<>();
+    private final Map<UUID, BlockPreview> activePreview = new ConcurrentHashMap<>();
+    
+    // Previews still being computed on the worker pool
+    private final Map<UUID, PreviewComputation> pendingPreviews = new ConcurrentHashMap<>();
+    private final ExecutorService previewExecutor;
+    
+    // Changes to the chunks of previews, checked again on confirm
+    private final ChunkChangeTracker changeTracker = new ChunkChangeTracker();
+    
+    // Subscription to selection changes, removed again on shutdown
+    private final SelectionListener selectionListener = this::onSelectionChange;
+    
+    // Outline of each drawn selection, built on first render of each selection version
+    private final Map<UUID, SelectionOutline> selectionOutlines = new ConcurrentHashMap<>();
+    
+    // Outline mode chosen by each player, and the entities of display outlines
+    private final Map<UUID, OutlineMode> outlineModes = new ConcurrentHashMap<>();
+    private final OutlineMode defaultOutlineMode;
+    private final DisplayOutlineRenderer displayRenderer;
+    
+    // Client-side block changes of ghost previews
+    private final GhostBlockRenderer ghostRenderer;
+    
+    // Particle budget of each player, refilled at the configured rate
+    private final Map<UUID, ParticleBudget> particleBudgets = new ConcurrentHashMap<>();
     
     // Particles configuration
     private final DustOptions SELECTION_PARTICLES = new DustOptions(Color.fromRGB(255, 255, 0), 1.0f); // Yellow
     private final DustOptions PREVIEW_PARTICLES = new DustOptions(Color.fromRGB(0, 255, 255), 1.0f); // Cyan
     
+    // Ticks between particle refreshes of one player
+    private static final int REFRESH_TICKS = 10;
+    
+    // Points closer than this are never culled by the view cone
+    private static final double ALWAYS_VISIBLE_DISTANCE = 2.0;
+    
+    // Ticks between checks for expired previews
+    private static final long EXPIRY_CHECK_TICKS = 200L;
+    
+    // Preview lifetime and the memory all previews together may use
+    private final long previewTtlMillis;
+    private final long previewMemoryBudget;
+    
+    // Culling and level-of-detail settings, read once per instance (reload creates a new one)
+    private final double maxDistanceSquared;
+    private final double viewConeCos;
+    private final double fullDetailDistance;
+    private final int maxParticlesPerSecond;
+    
     public VisualizationManager(Plugin plugin) {
         this.plugin = plugin;
+        
+        double maxDistance = plugin.getConfigManager().getVisualizationMaxDistance();
+        this.maxDistanceSquared = maxDistance * maxDistance;
+        // A full circle disables the view cone
+        int viewAngle = plugin.getConfigManager().getVisualizationViewAngle();
+        this.viewConeCos = viewAngle >= 360 ? -2.0 : Math.cos(Math.toRadians(viewAngle / 2.0));
+        this.fullDetailDistance = Math.max(1, plugin.getConfigManager().getVisualizationFullDetailDistance());
+        this.maxParticlesPerSecond = plugin.getConfigManager().getVisualizationMaxParticlesPerSecond();
+        OutlineMode outlineMode = OutlineMode.fromName(plugin.getConfigManager().getOutlineMode());
+        this.defaultOutlineMode = outlineMode != null ? outlineMode : OutlineMode.PARTICLES;
+        this.displayRenderer = new DisplayOutlineRenderer(plugin);
+        this.ghostRenderer = new GhostBlockRenderer(plugin);
+        this.previewTtlMillis = plugin.getConfigManager().getPreviewTtlMinutes() * 60L * 1000;
+        this.previewMemoryBudget = plugin.getConfigManager().getPreviewMemoryBudgetMb() * 1024L * 1024;
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        this.previewExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+            Thread thread = new Thread(r, "NusaWEdit-Preview-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        plugin.getSelectionManager().addListener(selectionListener);
+        plugin.getServer().getPluginManager().registerEvents(changeTracker, plugin);
         startVisualizationTask();
+        expiryTask = Bukkit.getScheduler().runTaskTimer(plugin, this::expirePreviews, EXPIRY_CHECK_TICKS, EXPIRY_CHECK_TICKS);
+    }
+    
+    /**
+     * Update derived state when a player's selection changes
+     * @param event Selection change
+     */
+    private void onSelectionChange(SelectionChangeEvent event) {
+        UUID playerId = event.getPlayerId();
+        
+        if (event.getType() == SelectionChangeEvent.Type.CLEARED) {
+            selectionOutlines.remove(playerId);
+            displayRenderer.remove(playerId);
+        } else {
+            // The new outline is built on the next render, so players who draw none never build one
+            SelectionOutline outline = selectionOutlines.get(playerId);
+            if (outline != null && outline.getVersion() != event.getNewSelection().getVersion()) {
+                selectionOutlines.remove(playerId, outline);
+            }
+        }
+        
+        // A preview was computed for the old selection, so its block set is stale now
+        BlockPreview preview = activePreview.get(playerId);
+        if (preview != null && preview.getSelection().getVersion() != event.getNewSelection().getVersion()) {
+            removePreview(playerId, preview, "preview.selection-changed");
+        }
+        
+        // The same goes for a preview that is still being computed
+        PreviewComputation computation = pendingPreviews.get(playerId);
+        if (computation != null && computation.getPreview().getSelection().getVersion() != event.getNewSelection().getVersion()
+                && pendingPreviews.remove(playerId, computation)) {
+            computation.cancel();
+            releasePreview(computation.getPreview());
+            Player player = Bukkit.getPlayer(playerId);
+            if (player != null) {
+                player.sendMessage(plugin.getMessageManager().getMessage("preview.selection-changed"));
+            }
+        }
     }
     
     /**
@@ -50,43 +168,100 @@ public class VisualizationManager {
             particleTask.cancel();
         }
         
-        // Run particle task every half second
-        particleTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
-            // Show selection particles for online players
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                UUID playerId = player.getUniqueId();
-                
-                // Only show for players who have visualization enabled
-                if (!visualizationEnabled.contains(playerId)) {
+        // Run every tick, drawing the players whose slot is due; outlines are built on first draw of each selection version
+        particleTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            for (UUID playerId : scheduler.nextTick()) {
+                Player player = Bukkit.getPlayer(playerId);
+                if (player == null) {
                     continue;
                 }
                 
-                // Show selection boundaries
-                Selection selection = plugin.getSelectionManager().getSelection(player);
-                if (selection != null && selection.isComplete()) {
-                    showSelectionBoundaries(player, selection);
+                SelectionOutline outline = getOutline(player);
+                
+                // Display outlines are moved when the selection changes instead of being redrawn
+                if (getOutlineMode(player) == OutlineMode.DISPLAY) {
+                    if (outline != null) {
+                        displayRenderer.update(player, outline);
+                    } else {
+                        displayRenderer.remove(playerId);
+                    }
+                    outline = null;
                 }
                 
-                // Show preview if active
+                // Ghost previews are sent once, only particle previews are redrawn
                 BlockPreview preview = activePreview.get(playerId);
+                if (preview != null && preview.getMode() != PreviewMode.PARTICLES) {
+                    preview = null;
+                }
+                if (outline == null && preview == null) {
+                    continue;
+                }
+                
+                ParticleView view = new ParticleView(player);
+                if (outline != null) {
+                    showSelectionBoundaries(player, outline, view);
+                }
                 if (preview != null) {
-                    showPreviewBoundaries(player, preview);
+                    showPreviewBoundaries(player, preview, view);
                 }
             }
-        }, 10L, 10L); // Every half second (10 ticks)
+        }, 1L, 1L);
+    }
+    
+    /**
+     * Get the outline of a player's selection, building it for the current selection version if needed
+     * @param player Player
+     * @return Outline, or null if the selection is incomplete
+     */
+    private SelectionOutline getOutline(Player player) {
+        Selection selection = plugin.getSelectionManager().getSelection(player);
+        if (!selection.isComplete()) {
+            return null;
+        }
+        
+        SelectionOutline outline = selectionOutlines.get(player.getUniqueId());
+        if (outline == null || outline.getVersion() != selection.getVersion()) {
+            outline = SelectionOutline.of(selection);
+            selectionOutlines.put(player.getUniqueId(), outline);
+        }
+        return outline;
     }
     
     /**
      * Clean up resources
      */
     public void shutdown() {
+        plugin.getSelectionManager().removeListener(selectionListener);
+        HandlerList.unregisterAll(changeTracker);
+        
+        for (PreviewComputation computation : pendingPreviews.values()) {
+            computation.cancel();
+        }
+        pendingPreviews.clear();
+        previewExecutor.shutdownNow();
+        
+        // Give players their real blocks back
+        for (Map.Entry<UUID, BlockPreview> entry : activePreview.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player != null) {
+                hidePreview(player, entry.getValue());
+            }
+        }
+        
         if (particleTask != null) {
             particleTask.cancel();
             particleTask = null;
         }
+        if (expiryTask != null) {
+            expiryTask.cancel();
+            expiryTask = null;
+        }
         
+        displayRenderer.removeAll();
         activePreview.clear();
-        visualizationEnabled.clear();
+        scheduler.clear();
+        selectionOutlines.clear();
+        particleBudgets.clear();
     }
     
     /**
@@ -97,98 +272,131 @@ public class VisualizationManager {
     public boolean toggleVisualization(Player player) {
         UUID playerId = player.getUniqueId();
         
-        if (visualizationEnabled.contains(playerId)) {
-            visualizationEnabled.remove(playerId);
+        if (scheduler.isSubscribed(playerId)) {
+            scheduler.unsubscribe(playerId);
+            displayRenderer.remove(playerId);
             return false;
         } else {
-            visualizationEnabled.add(playerId);
+            scheduler.subscribe(playerId);
             return true;
         }
     }
     
+    /**
+     * Forget a player's visualization state, called when they leave
+     * @param player Player
+     */
+    public void removePlayer(Player player) {
+        UUID playerId = player.getUniqueId();
+        scheduler.unsubscribe(playerId);
+        outlineModes.remove(playerId);
+        particleBudgets.remove(playerId);
+        selectionOutlines.remove(playerId);
+        displayRenderer.remove(playerId);
+    }
+    
+    /**
+     * Enable visualization for a player with a specific outline mode
+     * @param player Player
+     * @param mode Outline mode
+     */
+    public void setOutlineMode(Player player, OutlineMode mode) {
+        UUID playerId = player.getUniqueId();
+        outlineModes.put(playerId, mode);
+        scheduler.subscribe(playerId);
+        if (mode != OutlineMode.DISPLAY) {
+            displayRenderer.remove(playerId);
+        }
+    }
+    
+    /**
+     * Get how a player's selection outline is drawn
+     * @param player Player
+     * @return Chosen outline mode, or the configured default
+     */
+    public OutlineMode getOutlineMode(Player player) {
+        return outlineModes.getOrDefault(player.getUniqueId(), defaultOutlineMode);
+    }
+    
     /**
      * Check if a player has visualization enabled
      * @param player Player
      * @return true if enabled
      */
     public boolean hasVisualizationEnabled(Player player) {
-        return visualizationEnabled.contains(player.getUniqueId());
+        return scheduler.isSubscribed(player.getUniqueId());
     }
     
     /**
      * Show selection boundaries for a player
      * @param player Player to show particles to
-     * @param selection Selection to visualize
+     * @param outline Cached outline of the selection
+     * @param view Player's view for culling
      */
-    private void showSelectionBoundaries(Player player, Selection selection) {
-        if (!selection.isComplete()) return;
-        
-        int minX = selection.getMinX();
-        int minY = selection.getMinY();
-        int minZ = selection.getMinZ();
-        int maxX = selection.getMaxX();
-        int maxY = selection.getMaxY();
-        int maxZ = selection.getMaxZ();
-        
-        // Calculate edge points with reduced density
-        Set<Location> edgePoints = new HashSet<>();
-        
-        // How many blocks apart to place particles (higher = less particles)
-        int spacing = Math.max(1, (int)Math.ceil((maxX - minX + maxY - minY + maxZ - minZ) / 100.0));
-        
-        // Add edge points for each edge of the cuboid
-        for (int x = minX; x <= maxX; x += spacing) {
-            addEdgePoint(edgePoints, x, minY, minZ, selection);
-            addEdgePoint(edgePoints, x, minY, maxZ, selection);
-            addEdgePoint(edgePoints, x, maxY, minZ, selection);
-            addEdgePoint(edgePoints, x, maxY, maxZ, selection);
-        }
-        
-        for (int y = minY; y <= maxY; y += spacing) {
-            addEdgePoint(edgePoints, minX, y, minZ, selection);
-            addEdgePoint(edgePoints, minX, y, maxZ, selection);
-            addEdgePoint(edgePoints, maxX, y, minZ, selection);
-            addEdgePoint(edgePoints, maxX, y, maxZ, selection);
+    private void showSelectionBoundaries(Player player, SelectionOutline outline, ParticleView view) {
+        if (!view.world.equals(outline.getWorld())) {
+            return;
         }
         
-        for (int z = minZ; z <= maxZ; z += spacing) {
-            addEdgePoint(edgePoints, minX, minY, z, selection);
-            addEdgePoint(edgePoints, minX, maxY, z, selection);
-            addEdgePoint(edgePoints, maxX, minY, z, selection);
-            addEdgePoint(edgePoints, maxX, maxY, z, selection);
-        }
-        
-        // Spawn particles
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            for (Location loc : edgePoints) {
-                player.spawnParticle(Particle.REDSTONE, loc.add(0.5, 0.5, 0.5), 1, 0, 0, 0, 0, SELECTION_PARTICLES);
+        for (int i = 0; i < outline.getPointCount(); i++) {
+            double x = outline.getX(i);
+            double y = outline.getY(i);
+            double z = outline.getZ(i);
+            if (!isVisible(view, x, y, z, i)) {
+                continue;
             }
-        });
+            if (!view.budget.take()) {
+                return;
+            }
+            player.spawnParticle(Particle.REDSTONE, x, y, z, 1, 0, 0, 0, 0, SELECTION_PARTICLES);
+        }
     }
     
     /**
-     * Safely add an edge point
-     * @param points Set to add to
-     * @param x X coordinate
-     * @param y Y coordinate
-     * @param z Z coordinate
-     * @param selection Selection for world reference
+     * Check if a particle point should be sent to a player.
+     * Points beyond the maximum distance or outside the view cone are culled,
+     * and only every n-th point is kept as distance grows.
+     * @param view Player's view
+     * @param x Point X
+     * @param y Point Y
+     * @param z Point Z
+     * @param index Index of the point along its outline, for thinning out
+     * @return true if the point should be sent
      */
-    private void addEdgePoint(Set<Location> points, int x, int y, int z, Selection selection) {
-        if (selection.getWorld() != null) {
-            points.add(new Location(selection.getWorld(), x, y, z));
+    private boolean isVisible(ParticleView view, double x, double y, double z, int index) {
+        double dx = x - view.eyeX;
+        double dy = y - view.eyeY;
+        double dz = z - view.eyeZ;
+        double distanceSquared = dx * dx + dy * dy + dz * dz;
+        if (distanceSquared > maxDistanceSquared) {
+            return false;
+        }
+        
+        double distance = Math.sqrt(distanceSquared);
+        if (distance > ALWAYS_VISIBLE_DISTANCE
+                && dx * view.dirX + dy * view.dirY + dz * view.dirZ < viewConeCos * distance) {
+            return false;
         }
+        
+        // Level of detail: full density nearby, every n-th point further away
+        int step = (int) (distance / fullDetailDistance);
+        return step <= 1 || index % step == 0;
     }
     
     /**
-     * Start a block operation preview
+     * Start a block operation preview.
+     * The affected blocks are computed on a worker from chunk snapshots;
+     * the preview becomes active once they are ready.
      * @param player Player
      * @param material Target material
      * @param isReplace Whether this is a replace operation
      * @param fromMaterial Source material for replace operation
-     * @return true if preview was created
+     * @param mode How to show the preview
+     * @param onReady Called on the main thread when the preview is shown
+     * @return true if the preview is being computed
      */
-    public boolean startPreview(Player player, Material material, boolean isReplace, Material fromMaterial) {
+    public boolean startPreview(Player player, Material material, boolean isReplace, Material fromMaterial,
+            PreviewMode mode, Consumer<BlockPreview> onReady) {
         UUID playerId = player.getUniqueId();
         
         // Cancel existing preview
@@ -201,82 +409,208 @@ public class VisualizationManager {
         }
         
         // Create new preview
-        BlockPreview preview = new BlockPreview(selection, material, isReplace, fromMaterial);
+        BlockPreview preview = new BlockPreview(selection, material, isReplace, fromMaterial, mode);
+        preview.setChangeStamp(changeTracker.watch(selection.getWorld(), selection.getRegion().getChunks()));
         
-        // Calculate affected blocks for preview
-        int minX = selection.getMinX();
-        int minY = selection.getMinY();
-        int minZ = selection.getMinZ();
-        int maxX = selection.getMaxX();
-        int maxY = selection.getMaxY();
-        int maxZ = selection.getMaxZ();
-        
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    Block block = selection.getWorld().getBlockAt(x, y, z);
-                    
-                    // Skip blacklisted blocks
-                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
-                        continue;
-                    }
-                    
-                    if (!isReplace || block.getType() == fromMaterial) {
-                        preview.addBlock(block.getLocation());
-                    }
+        // Snapshots are taken here, the scan itself runs on the worker pool
+        PreviewComputation computation = new PreviewComputation(preview, plugin.getConfigManager());
+        pendingPreviews.put(playerId, computation);
+        previewExecutor.execute(() -> {
+            try {
+                if (computation.compute()) {
+                    Bukkit.getScheduler().runTask(plugin, () -> publishPreview(playerId, computation, onReady));
                 }
+            } catch (RuntimeException e) {
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (pendingPreviews.remove(playerId, computation)) {
+                        releasePreview(computation.getPreview());
+                    }
+                });
+                plugin.getLogger().warning("Failed to compute preview for " + playerId);
+                e.printStackTrace();
             }
+        });
+        
+        return true;
+    }
+    
+    /**
+     * Make a computed preview active, unless it was cancelled meanwhile
+     * @param playerId Player UUID
+     * @param computation Finished computation
+     * @param onReady Called when the preview is shown
+     */
+    private void publishPreview(UUID playerId, PreviewComputation computation, Consumer<BlockPreview> onReady) {
+        if (!pendingPreviews.remove(playerId, computation)) {
+            return;
+        }
+        BlockPreview preview = computation.getPreview();
+        Player player = Bukkit.getPlayer(playerId);
+        if (player == null) {
+            releasePreview(preview);
+            return;
         }
         
-        // Store preview
+        // Store preview, making room in the memory budget
         activePreview.put(playerId, preview);
+        enforceMemoryBudget();
+        if (activePreview.get(playerId) != preview) {
+            return;
+        }
+        if (preview.getMode() == PreviewMode.GHOST) {
+            ghostRenderer.show(player, preview);
+        }
         
         // Enable visualization for this player if not already enabled
-        if (!visualizationEnabled.contains(playerId)) {
-            visualizationEnabled.add(playerId);
-        }
+        scheduler.subscribe(playerId);
         
-        return true;
+        onReady.accept(preview);
     }
     
     /**
      * Show preview boundaries for a player
      * @param player Player to show particles to
      * @param preview Preview to visualize
+     * @param view Player's view for culling
      */
-    private void showPreviewBoundaries(Player player, BlockPreview preview) {
-        // Calculate particles to show based on density
-        Set<Location> previewPoints = new HashSet<>();
+    private void showPreviewBoundaries(Player player, BlockPreview preview, ParticleView view) {
+        if (!view.world.equals(preview.getSelection().getWorld())) {
+            return;
+        }
         
         // Limit total particles shown
         int maxParticles = 200;
-        int particleSpacing = Math.max(1, preview.getBlocks().size() / maxParticles);
+        int particleSpacing = Math.max(1, preview.getBlockCount() / maxParticles);
         
-        int counter = 0;
-        for (Location loc : preview.getBlocks()) {
-            if (counter % particleSpacing == 0) {
-                previewPoints.add(loc);
-            }
-            counter++;
-        }
-        
-        // Spawn particles
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            for (Location loc : previewPoints) {
-                player.spawnParticle(Particle.REDSTONE, loc.add(0.5, 0.5, 0.5), 1, 0, 0, 0, 0, PREVIEW_PARTICLES);
+        int[] counter = {0};
+        preview.forEachSample(particleSpacing, (bx, by, bz) -> {
+            double x = bx + 0.5;
+            double y = by + 0.5;
+            double z = bz + 0.5;
+            if (isVisible(view, x, y, z, counter[0]++) && view.budget.take()) {
+                player.spawnParticle(Particle.REDSTONE, x, y, z, 1, 0, 0, 0, 0, PREVIEW_PARTICLES);
             }
         });
     }
     
     /**
-     * Cancel an active preview
+     * Cancel an active preview, or one that is still being computed
      * @param player Player
      * @return true if a preview was cancelled
      */
     public boolean cancelPreview(Player player) {
         UUID playerId = player.getUniqueId();
+        PreviewComputation computation = pendingPreviews.remove(playerId);
+        if (computation != null) {
+            computation.cancel();
+            releasePreview(computation.getPreview());
+        }
+        
         BlockPreview preview = activePreview.remove(playerId);
-        return preview != null;
+        if (preview != null) {
+            hidePreview(player, preview);
+            releasePreview(preview);
+        }
+        return preview != null || computation != null;
+    }
+    
+    /**
+     * Check if a player's preview is still being computed
+     * @param player Player
+     * @return true if a computation is in flight
+     */
+    public boolean isComputingPreview(Player player) {
+        return pendingPreviews.containsKey(player.getUniqueId());
+    }
+    
+    /**
+     * Remove what a preview shows to the player
+     * @param player Player
+     * @param preview Preview being removed
+     */
+    private void hidePreview(Player player, BlockPreview preview) {
+        if (preview.getMode() == PreviewMode.GHOST) {
+            ghostRenderer.revert(player, preview);
+        }
+    }
+    
+    /**
+     * Remove a preview that is no longer wanted and tell its owner why
+     * @param playerId Owner of the preview
+     * @param preview Preview to remove, nothing happens if it was replaced meanwhile
+     * @param messageKey Message sent to the owner
+     */
+    private void removePreview(UUID playerId, BlockPreview preview, String messageKey) {
+        if (!activePreview.remove(playerId, preview)) {
+            return;
+        }
+        releasePreview(preview);
+        Player player = Bukkit.getPlayer(playerId);
+        if (player != null) {
+            hidePreview(player, preview);
+            player.sendMessage(plugin.getMessageManager().getMessage(messageKey));
+        }
+    }
+    
+    /**
+     * Remove previews older than the configured time to live
+     */
+    private void expirePreviews() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, BlockPreview> entry : activePreview.entrySet()) {
+            if (now - entry.getValue().getCreatedAt() > previewTtlMillis) {
+                removePreview(entry.getKey(), entry.getValue(), "preview.expired");
+            }
+        }
+    }
+    
+    /**
+     * Evict the oldest previews while all previews together use more than the memory budget
+     */
+    private void enforceMemoryBudget() {
+        long total = 0;
+        for (BlockPreview preview : activePreview.values()) {
+            total += preview.estimateMemory();
+        }
+        if (total <= previewMemoryBudget) {
+            return;
+        }
+        
+        List<Map.Entry<UUID, BlockPreview>> oldestFirst = new ArrayList<>(activePreview.entrySet());
+        oldestFirst.sort(Comparator.comparingLong(entry -> entry.getValue().getCreatedAt()));
+        for (Map.Entry<UUID, BlockPreview> entry : oldestFirst) {
+            if (total <= previewMemoryBudget) {
+                break;
+            }
+            total -= entry.getValue().estimateMemory();
+            removePreview(entry.getKey(), entry.getValue(), "preview.evicted");
+        }
+    }
+    
+    /**
+     * Stop tracking changes to the chunks of a preview that is no longer kept
+     * @param preview Removed preview
+     */
+    private void releasePreview(BlockPreview preview) {
+        Selection selection = preview.getSelection();
+        changeTracker.unwatch(selection.getWorld(), selection.getRegion().getChunks());
+    }
+    
+    /**
+     * Get the tracker that operations report their block changes to
+     * @return Chunk change tracker
+     */
+    public ChunkChangeTracker getChangeTracker() {
+        return changeTracker;
+    }
+    
+    /**
+     * Get the preview mode used when none is given
+     * @return Configured default mode
+     */
+    public PreviewMode getDefaultPreviewMode() {
+        PreviewMode mode = PreviewMode.fromName(plugin.getConfigManager().getPreviewMode());
+        return mode != null ? mode : PreviewMode.PARTICLES;
     }
     
     /**
@@ -301,22 +635,76 @@ public class VisualizationManager {
             return false;
         }
         
-        // Execute the operation
+        // Ghost blocks must not hide the real result
+        hidePreview(player, preview);
+        
+        // Only the chunks changed since the preview was computed are scanned again
+        Selection selection = preview.getSelection();
+        World world = selection.getWorld();
+        for (long chunkKey : changeTracker.getChangedChunks(world, selection.getRegion().getChunks(), preview.getChangeStamp())) {
+            rescanChunk(preview, chunkKey);
+        }
+        preview.setChangeStamp(changeTracker.getStamp());
+        
+        // Execute the operation on the stored block set, read straight from the bitsets
+        Iterator<Location> blocks = preview.iterator(world);
+        int count = preview.getBlockCount();
         boolean success;
         if (preview.isReplace()) {
-            success = plugin.getBlockOperationHandler().replaceBlocks(player, preview.getFromMaterial(), preview.getMaterial());
+            success = plugin.getBlockOperationHandler().replaceBlocksAt(player, preview.getFromMaterial(), preview.getMaterial(), blocks, count);
         } else {
-            success = plugin.getBlockOperationHandler().setBlocks(player, preview.getMaterial());
+            success = plugin.getBlockOperationHandler().setBlocksAt(player, preview.getMaterial(), blocks, count);
         }
         
-        // Remove the preview if successful
+        // Remove the preview if successful, otherwise keep showing it
         if (success) {
             activePreview.remove(playerId);
+            releasePreview(preview);
+        } else if (preview.getMode() == PreviewMode.GHOST) {
+            ghostRenderer.show(player, preview);
         }
         
         return success;
     }
     
+    /**
+     * Scan one chunk of a preview again, after it changed
+     * @param preview Preview to update
+     * @param chunkKey Key of the changed chunk
+     */
+    private void rescanChunk(BlockPreview preview, long chunkKey) {
+        preview.clearChunk(chunkKey);
+        
+        Region region = preview.getSelection().getRegion();
+        World world = region.getWorld();
+        int chunkX = (int) (chunkKey >> 32) << 4;
+        int chunkZ = (int) chunkKey << 4;
+        int minX = Math.max(region.getMinX(), chunkX);
+        int maxX = Math.min(region.getMaxX(), chunkX + 15);
+        int minZ = Math.max(region.getMinZ(), chunkZ);
+        int maxZ = Math.min(region.getMaxZ(), chunkZ + 15);
+        
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+                    if (!region.contains(x, y, z)) {
+                        continue;
+                    }
+                    Block block = world.getBlockAt(x, y, z);
+                    
+                    // Skip blacklisted blocks
+                    if (plugin.getConfigManager().isBlacklisted(block.getType())) {
+                        continue;
+                    }
+                    
+                    if (!preview.isReplace() || block.getType() == preview.getFromMaterial()) {
+                        preview.addBlock(x, y, z);
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Get the preview for a player
      * @param player Player
@@ -325,4 +713,59 @@ public class VisualizationManager {
     public BlockPreview getPreview(Player player) {
         return activePreview.get(player.getUniqueId());
     }
-}
\ No newline at end of file
+    
+    /**
+     * A player's eye position and facing for one refresh
+     */
+    private class ParticleView {
+        final World world;
+        final double eyeX, eyeY, eyeZ;
+        final double dirX, dirY, dirZ;
+        final ParticleBudget budget;
+        
+        ParticleView(Player player) {
+            Location eye = player.getEyeLocation();
+            Vector direction = eye.getDirection();
+            this.world = eye.getWorld();
+            this.eyeX = eye.getX();
+            this.eyeY = eye.getY();
+            this.eyeZ = eye.getZ();
+            this.dirX = direction.getX();
+            this.dirY = direction.getY();
+            this.dirZ = direction.getZ();
+            this.budget = particleBudgets.computeIfAbsent(player.getUniqueId(), k -> new ParticleBudget());
+            this.budget.refill(maxParticlesPerSecond, maxParticlesPerSecond * REFRESH_TICKS / 20.0);
+        }
+    }
+    
+    /**
+     * Token bucket limiting the particles sent to one player
+     */
+    private static class ParticleBudget {
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        
+        /**
+         * Add the tokens earned since the last refill
+         * @param perSecond Refill rate
+         * @param capacity Maximum tokens held
+         */
+        void refill(int perSecond, double capacity) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / 1_000_000_000.0 * perSecond);
+            lastRefill = now;
+        }
+        
+        /**
+         * Use one token
+         * @return true if a particle may be sent
+         */
+        boolean take() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
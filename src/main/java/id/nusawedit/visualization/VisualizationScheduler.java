@@ -0,0 +1,97 @@
+package id.nusawedit.visualization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Spreads the players with visualization enabled evenly over the ticks of a refresh period.
+ *
+ * A subscribing player is put in the slot with the fewest players, and each tick
+ * only the players of one slot are drawn, so the work per tick stays flat as more
+ * players turn visualization on. Only used on the main thread.
+ */
+class VisualizationScheduler {
+    private final List<Set<UUID>> slots;
+    private final Map<UUID, Integer> slotOf = new HashMap<>();
+    private int tick;
+    
+    /**
+     * Create a scheduler
+     * @param period Ticks between two refreshes of the same player
+     */
+    VisualizationScheduler(int period) {
+        this.slots = new ArrayList<>(period);
+        for (int i = 0; i < period; i++) {
+            slots.add(new LinkedHashSet<>());
+        }
+    }
+    
+    /**
+     * Subscribe a player to visualization
+     * @param playerId Player UUID
+     * @return true if the player was not subscribed yet
+     */
+    boolean subscribe(UUID playerId) {
+        if (slotOf.containsKey(playerId)) {
+            return false;
+        }
+        
+        int slot = 0;
+        for (int i = 1; i < slots.size(); i++) {
+            if (slots.get(i).size() < slots.get(slot).size()) {
+                slot = i;
+            }
+        }
+        slots.get(slot).add(playerId);
+        slotOf.put(playerId, slot);
+        return true;
+    }
+    
+    /**
+     * Unsubscribe a player from visualization
+     * @param playerId Player UUID
+     * @return true if the player was subscribed
+     */
+    boolean unsubscribe(UUID playerId) {
+        Integer slot = slotOf.remove(playerId);
+        if (slot == null) {
+            return false;
+        }
+        slots.get(slot).remove(playerId);
+        return true;
+    }
+    
+    /**
+     * Check if a player is subscribed
+     * @param playerId Player UUID
+     * @return true if subscribed
+     */
+    boolean isSubscribed(UUID playerId) {
+        return slotOf.containsKey(playerId);
+    }
+    
+    /**
+     * Advance one tick
+     * @return Players to draw this tick, not to be modified while iterating
+     */
+    Set<UUID> nextTick() {
+        Set<UUID> due = slots.get(tick);
+        tick = (tick + 1) % slots.size();
+        return due;
+    }
+    
+    /**
+     * Unsubscribe every player
+     */
+    void clear() {
+        for (Set<UUID> slot : slots) {
+            slot.clear();
+        }
+        slotOf.clear();
+    }
+}